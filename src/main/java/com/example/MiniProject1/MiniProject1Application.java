@@ -3,9 +3,11 @@ package com.example.MiniProject1;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @ComponentScan(basePackages = "com.example.*")
+@EnableScheduling
 public class MiniProject1Application {
 
 	public static void main(String[] args) {
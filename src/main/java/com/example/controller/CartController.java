@@ -1,11 +1,22 @@
 package com.example.controller;
 
 import com.example.model.Cart;
+import com.example.model.CartSummary;
 import com.example.model.Product;
+import com.example.repository.Page;
+import com.example.repository.PageQuery;
+import com.example.service.CartOperation;
 import com.example.service.CartService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import java.util.ArrayList;
+import org.springframework.web.server.ResponseStatusException;
+import java.io.IOException;
+import java.util.List;
 import java.util.UUID;
 
 @RestController
@@ -13,11 +24,13 @@ import java.util.UUID;
 public class CartController {
     // The Dependency Injection Variables
     private final CartService cartService;
+    private final ObjectMapper objectMapper;
 
     // The Constructor with the required variables mapping the Dependency Injection
     @Autowired
-    public CartController(CartService cartService) {
+    public CartController(CartService cartService, ObjectMapper objectMapper) {
         this.cartService = cartService;
+        this.objectMapper = objectMapper;
     }
 
     /**
@@ -29,28 +42,115 @@ public class CartController {
     }
 
     /**
-     * Get Request to get all the carts in the system
+     * Get Request to get the carts in the system, streamed to the client one cart at a time.
+     * Optionally filtered by user, and paginated by id with limit and cursor
      */
     @GetMapping("/")
-    public ArrayList<Cart> getCarts() {
-        return cartService.getCarts();
+    public void getCarts(
+            @RequestParam(required = false) UUID userId,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String order,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            HttpServletResponse response) throws IOException {
+        Page<Cart> page;
+        try {
+            page = cartService.getCartsPage(userId, PageQuery.of(sort, order, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        JsonStreams.writePage(response, objectMapper, page);
+    }
+
+    /**
+     * Get Request to export all the carts as newline-delimited JSON, one cart per line, for bulk consumers
+     */
+    @GetMapping(value = "/export", produces = JsonStreams.NDJSON_VALUE)
+    public void exportCarts(HttpServletResponse response) throws IOException {
+        JsonStreams.writeLines(response, objectMapper, cartService.streamCarts());
     }
 
     /**
      * Get Request to get a specific cart by passing its ID in the URL
+     * The response carries the cart's version as its ETag, so a matching If-None-Match gets a bodiless 304
      */
     @GetMapping("/{cartId}")
-    public Cart getCartById(@PathVariable UUID cartId) {
-        return cartService.getCartById(cartId);
+    public ResponseEntity<Cart> getCartById(@PathVariable UUID cartId) {
+        Cart cart = cartService.getCartById(cartId);
+        if (cart == null) {
+            return ResponseEntity.ok(null);
+        }
+        return ResponseEntity.ok().eTag(ETags.of(cart)).body(cart);
+    }
+
+    /**
+     * Get Request to get a cart's item count and total price by passing its ID in the URL, without its lines.
+     * Carries the same ETag as the cart itself
+     */
+    @GetMapping("/{cartId}/summary")
+    public ResponseEntity<CartSummary> getCartSummary(@PathVariable UUID cartId) {
+        CartSummary summary = cartService.getCartSummary(cartId);
+        if (summary == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok().eTag(ETags.of(summary.version())).body(summary);
+    }
+
+    /**
+     * Get Request to get the products in a cart, looked up from the catalog, by passing the cart's ID in the URL
+     */
+    @GetMapping("/{cartId}/products")
+    public List<Product> getCartProducts(@PathVariable UUID cartId) {
+        return cartService.getCartProducts(cartId);
     }
 
     /**
      * Put Request to add a product that is passed through the request body to the cart with its ID passed in the URL
+     * With an If-Match header the product is only added if the cart is still at that version, otherwise 412;
+     * a cart that doesn't exist is 404 either way
      */
     @PutMapping("/addProduct/{cartId}")
-    public String addProductToCart(@PathVariable UUID cartId, @RequestBody Product product) {
-        cartService.addProductToCart(cartId, product);
-        return "Product added to cart";
+    public ResponseEntity<String> addProductToCart(@PathVariable UUID cartId,
+                                                   @RequestHeader(value = "If-Match", required = false) String ifMatch,
+                                                   @RequestBody Product product) {
+        Long expectedVersion = ETags.parseIfMatch(ifMatch);
+        if (expectedVersion == null) {
+            cartService.addProductToCart(cartId, product);
+            return ResponseEntity.ok("Product added to cart");
+        }
+        Cart cart;
+        try {
+            cart = cartService.addProductToCart(cartId, product, expectedVersion);
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body("Cart was modified by another request");
+        }
+        if (cart == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Cart not found");
+        }
+        return ResponseEntity.ok().eTag(ETags.of(cart)).body("Product added to cart");
+    }
+
+    /**
+     * Put Request to apply a list of add/remove operations, passed through the request body, to the cart with its ID
+     * passed in the URL. The whole batch is persisted at once and either all operations apply or none do;
+     * with an If-Match header the batch is only applied if the cart is still at that version, otherwise 412
+     */
+    @PutMapping("/batch/{cartId}")
+    public ResponseEntity<Cart> applyOperations(@PathVariable UUID cartId,
+                                                @RequestHeader(value = "If-Match", required = false) String ifMatch,
+                                                @RequestBody List<CartOperation> operations) {
+        Cart cart;
+        try {
+            cart = cartService.applyOperations(cartId, operations, ETags.parseIfMatch(ifMatch));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
+        if (cart == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok().eTag(ETags.of(cart)).body(cart);
     }
 
     /**
@@ -0,0 +1,39 @@
+package com.example.controller;
+
+import com.example.model.Versioned;
+
+/**
+ * Maps entity versions to HTTP entity tags and back for conditional requests
+ */
+final class ETags {
+
+    private ETags() {
+    }
+
+    static String of(Versioned entity) {
+        return of(entity.getVersion());
+    }
+
+    static String of(long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * The version named by an If-Match header, or null if the header is absent or "*".
+     * A tag that isn't one of ours maps to -1, which no entity version ever matches.
+     */
+    static Long parseIfMatch(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        try {
+            return Long.parseLong(tag.replace("\"", ""));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+}
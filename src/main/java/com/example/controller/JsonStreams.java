@@ -0,0 +1,143 @@
+package com.example.controller;
+
+import com.example.repository.Page;
+import com.example.service.ImportReport;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Reads and writes collections one entity at a time, so a large listing or import is never
+ * held in memory as one serialized buffer
+ */
+final class JsonStreams {
+
+    static final String NDJSON_VALUE = "application/x-ndjson";
+
+    private JsonStreams() {
+    }
+
+    /**
+     * Write the entities as a single JSON array. The write happens on the request thread rather than
+     * through an async body, so callers (and MockMvc) see a complete response when the handler returns
+     */
+    static void writeArray(HttpServletResponse response, ObjectMapper objectMapper, Stream<?> entities) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        // Leave flushing to the servlet's own buffer instead of pushing every entity out separately
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (entities; JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.writeStartArray();
+            Iterator<?> iterator = entities.iterator();
+            while (iterator.hasNext()) {
+                writer.writeValue(generator, iterator.next());
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Write the entities as newline-delimited JSON, one entity per line. Each write blocks once the
+     * servlet buffer and socket are full, so a slow consumer holds back the export rather than letting
+     * serialized output pile up on the heap
+     */
+    static void writeLines(HttpServletResponse response, ObjectMapper objectMapper, Stream<?> entities) throws IOException {
+        response.setContentType(NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (entities; JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            // Lines are terminated explicitly below, so no separator is wanted between root values
+            generator.setRootValueSeparator(null);
+            Iterator<?> iterator = entities.iterator();
+            while (iterator.hasNext()) {
+                writer.writeValue(generator, iterator.next());
+                generator.writeRaw('\n');
+            }
+        }
+    }
+
+    /**
+     * Write a page's items as a JSON array, with a Link header pointing at the next page when there is one
+     */
+    static void writePage(HttpServletResponse response, ObjectMapper objectMapper, Page<?> page) throws IOException {
+        if (page.nextCursor() != null) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("cursor", page.nextCursor())
+                    .toUriString();
+            response.setHeader(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        writeArray(response, objectMapper, page.items());
+    }
+
+    /**
+     * Read a request body holding either a JSON array or newline-delimited JSON, one item at a time.
+     * Items that cannot be bound to the type are rejected in the report by position and the rest carry on;
+     * malformed JSON in an array ends the read, since the parser cannot find the next item after it
+     */
+    static <T> Map<Integer, T> readItems(HttpServletRequest request, ObjectMapper objectMapper, Class<T> type,
+                                         ImportReport report) throws IOException {
+        Map<Integer, T> items = new LinkedHashMap<>();
+        if (request.getContentType() != null && request.getContentType().startsWith(NDJSON_VALUE)) {
+            BufferedReader reader = request.getReader();
+            int index = 0;
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    items.put(index, objectMapper.readValue(line, type));
+                } catch (JsonProcessingException e) {
+                    report.reject(index, e.getOriginalMessage());
+                }
+                index++;
+            }
+            return items;
+        }
+        try (JsonParser parser = objectMapper.getFactory().createParser(request.getInputStream())) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("Expected a JSON array or newline-delimited JSON");
+            }
+            int index = 0;
+            while (true) {
+                JsonNode item;
+                try {
+                    if (parser.nextToken() == JsonToken.END_ARRAY) {
+                        break;
+                    }
+                    item = objectMapper.readTree(parser);
+                } catch (JsonProcessingException e) {
+                    report.reject(index, "Malformed JSON: " + e.getOriginalMessage());
+                    break;
+                }
+                if (item == null) {
+                    report.reject(index, "Unexpected end of input");
+                    break;
+                }
+                try {
+                    items.put(index, objectMapper.treeToValue(item, type));
+                } catch (JsonProcessingException e) {
+                    report.reject(index, e.getOriginalMessage());
+                }
+                index++;
+            }
+        }
+        return items;
+    }
+}
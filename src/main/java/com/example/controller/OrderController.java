@@ -1,10 +1,23 @@
 package com.example.controller;
 
 import com.example.model.Order;
+import com.example.model.Product;
+import com.example.repository.Page;
+import com.example.repository.PageQuery;
+import com.example.service.ImportReport;
 import com.example.service.OrderService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import java.util.ArrayList;
+import org.springframework.web.server.ResponseStatusException;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @RestController
@@ -12,11 +25,13 @@ import java.util.UUID;
 public class OrderController {
     // The Dependency Injection Variables
     private final OrderService orderService;
+    private final ObjectMapper objectMapper;
 
     // The Constructor with the required variables mapping the Dependency Injection
     @Autowired
-    public OrderController(OrderService orderService) {
+    public OrderController(OrderService orderService, ObjectMapper objectMapper) {
         this.orderService = orderService;
+        this.objectMapper = objectMapper;
     }
 
     /**
@@ -29,18 +44,79 @@ public class OrderController {
 
     /**
      * Get Request to get a specific order by passing its ID in the URL
+     * The response carries the order's version as its ETag, so a matching If-None-Match gets a bodiless 304
      */
     @GetMapping("/{orderId}")
-    public Order getOrderById(@PathVariable UUID orderId) {
-        return orderService.getOrderById(orderId);
+    public ResponseEntity<Order> getOrderById(@PathVariable UUID orderId) {
+        Order order = orderService.getOrderById(orderId);
+        if (order == null) {
+            return ResponseEntity.ok(null);
+        }
+        return ResponseEntity.ok().eTag(ETags.of(order)).body(order);
     }
 
     /**
-     * Get Request to get all the orders in our system
+     * Get Request to get the orders in our system, streamed to the client one order at a time.
+     * Optionally filtered by user and total price range, sorted by id or totalPrice, and paginated with
+     * limit and cursor; the Link header carries the cursor for the next page
      */
     @GetMapping("/")
-    public ArrayList<Order> getOrders() {
-        return orderService.getOrders();
+    public void getOrders(
+            @RequestParam(required = false) UUID userId,
+            @RequestParam(required = false) Double minPrice,
+            @RequestParam(required = false) Double maxPrice,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String order,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            HttpServletResponse response) throws IOException {
+        Page<Order> page;
+        try {
+            page = orderService.getOrdersPage(userId, minPrice, maxPrice, PageQuery.of(sort, order, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        JsonStreams.writePage(response, objectMapper, page);
+    }
+
+    /**
+     * Post Request to insert or replace many orders at once from a JSON array or newline-delimited JSON body.
+     * Valid orders are persisted with a single batched write; the response reports each rejected order by position
+     */
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_JSON_VALUE, JsonStreams.NDJSON_VALUE})
+    public ImportReport importOrders(HttpServletRequest request) throws IOException {
+        ImportReport report = new ImportReport();
+        Map<Integer, Order> orders;
+        try {
+            orders = JsonStreams.readItems(request, objectMapper, Order.class, report);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        return orderService.importOrders(orders, report);
+    }
+
+    /**
+     * Get Request to export all the orders as newline-delimited JSON, one order per line, for bulk consumers
+     */
+    @GetMapping(value = "/export", produces = JsonStreams.NDJSON_VALUE)
+    public void exportOrders(HttpServletResponse response) throws IOException {
+        JsonStreams.writeLines(response, objectMapper, orderService.streamOrders());
+    }
+
+    /**
+     * Get Request to get the products in an order, looked up from the catalog, by passing the order's ID in the URL
+     */
+    @GetMapping("/{orderId}/products")
+    public List<Product> getOrderProducts(@PathVariable UUID orderId) {
+        return orderService.getOrderProducts(orderId);
+    }
+
+    /**
+     * Get Request to get all the orders placed by a specific user by passing the user's ID in the URL
+     */
+    @GetMapping("/user/{userId}")
+    public List<Order> getOrdersByUserId(@PathVariable UUID userId) {
+        return orderService.getOrdersByUserId(userId);
     }
 
     /**
@@ -1,10 +1,22 @@
 package com.example.controller;
 
 import com.example.model.Product;
+import com.example.repository.Page;
+import com.example.repository.PageQuery;
+import com.example.service.ImportReport;
 import com.example.service.ProductService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.UUID;
@@ -14,11 +26,13 @@ import java.util.UUID;
 public class ProductController {
     // The Dependency Injection Variables
     private final ProductService productService;
+    private final ObjectMapper objectMapper;
 
     // The Constructor with the required variables mapping the Dependency Injection
     @Autowired
-    public ProductController(ProductService productService) {
+    public ProductController(ProductService productService, ObjectMapper objectMapper) {
         this.productService = productService;
+        this.objectMapper = objectMapper;
     }
 
     /**
@@ -30,26 +44,74 @@ public class ProductController {
     }
 
     /**
-     * Get Request to get all the products from the system
+     * Get Request to get the products from the system, streamed to the client one product at a time.
+     * Optionally filtered by price range and name prefix, sorted by id, name or price, and paginated with
+     * limit and cursor; the Link header carries the cursor for the next page
      */
     @GetMapping("/")
-    public ArrayList<Product> getProducts() {
-        return productService.getProducts();
+    public void getProducts(
+            @RequestParam(required = false) Double minPrice,
+            @RequestParam(required = false) Double maxPrice,
+            @RequestParam(required = false) String namePrefix,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String order,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            HttpServletResponse response) throws IOException {
+        Page<Product> page;
+        try {
+            page = productService.getProductsPage(minPrice, maxPrice, namePrefix, PageQuery.of(sort, order, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        JsonStreams.writePage(response, objectMapper, page);
+    }
+
+    /**
+     * Post Request to insert or replace many products at once from a JSON array or newline-delimited JSON body.
+     * Valid products are persisted with a single batched write; the response reports each rejected product by position
+     */
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_JSON_VALUE, JsonStreams.NDJSON_VALUE})
+    public ImportReport importProducts(HttpServletRequest request) throws IOException {
+        ImportReport report = new ImportReport();
+        Map<Integer, Product> products;
+        try {
+            products = JsonStreams.readItems(request, objectMapper, Product.class, report);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        return productService.importProducts(products, report);
+    }
+
+    /**
+     * Get Request to export all the products as newline-delimited JSON, one product per line, for bulk consumers
+     */
+    @GetMapping(value = "/export", produces = JsonStreams.NDJSON_VALUE)
+    public void exportProducts(HttpServletResponse response) throws IOException {
+        JsonStreams.writeLines(response, objectMapper, productService.streamProducts());
     }
 
     /**
      * Get Request to get a specific product by passing its ID in the URL
+     * The response carries the product's version as its ETag, so a matching If-None-Match gets a bodiless 304
      */
     @GetMapping("/{productId}")
-    public Product getProductById(@PathVariable UUID productId) {
-        return productService.getProductById(productId);
+    public ResponseEntity<Product> getProductById(@PathVariable UUID productId) {
+        Product product = productService.getProductById(productId);
+        if (product == null) {
+            return ResponseEntity.ok(null);
+        }
+        return ResponseEntity.ok().eTag(ETags.of(product)).body(product);
     }
 
     /**
      * Put Request to update the product by passing its ID in the URL with specific body in the request body
+     * With an If-Match header the update only applies if the product is still at that version, otherwise 412
      */
     @PutMapping("/update/{productId}")
-    public Product updateProduct(@PathVariable UUID productId, @RequestBody Map<String, Object> body) {
+    public ResponseEntity<Product> updateProduct(@PathVariable UUID productId,
+                                                 @RequestHeader(value = "If-Match", required = false) String ifMatch,
+                                                 @RequestBody Map<String, Object> body) {
         String newName;
         double newPrice;
         
@@ -70,7 +132,24 @@ public class ProductController {
             throw new IllegalArgumentException("Price is a required field");
         }
         
-        return productService.updateProduct(productId, newName, newPrice);
+        Long expectedVersion = ETags.parseIfMatch(ifMatch);
+        Product product;
+        if (expectedVersion == null) {
+            product = productService.updateProduct(productId, newName, newPrice);
+        } else {
+            try {
+                product = productService.updateProduct(productId, newName, newPrice, expectedVersion);
+            } catch (OptimisticLockingFailureException e) {
+                product = null;
+            }
+            if (product == null) {
+                return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+            }
+        }
+        if (product == null) {
+            return ResponseEntity.ok(null);
+        }
+        return ResponseEntity.ok().eTag(ETags.of(product)).body(product);
     }
 
     /**
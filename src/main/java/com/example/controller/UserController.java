@@ -4,13 +4,28 @@ import com.example.model.Cart;
 import com.example.model.Order;
 import com.example.model.Product;
 import com.example.model.User;
+import com.example.repository.Page;
+import com.example.repository.PageQuery;
 import com.example.service.CartService;
+import com.example.service.IdempotencyStore;
+import com.example.service.ImportReport;
 import com.example.service.ProductService;
 import com.example.service.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import java.io.IOException;
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @RestController
@@ -20,13 +35,18 @@ public class UserController {
     private final UserService userService;
     private final ProductService productService;
     private final CartService cartService;
+    private final ObjectMapper objectMapper;
+    private final IdempotencyStore idempotencyStore;
 
     // Constructor with required variables for Dependency Injection
     @Autowired
-    public UserController(UserService userService, ProductService productService, CartService cartService) {
+    public UserController(UserService userService, ProductService productService, CartService cartService,
+                          ObjectMapper objectMapper, IdempotencyStore idempotencyStore) {
         this.userService = userService;
         this.productService = productService;
         this.cartService = cartService;
+        this.objectMapper = objectMapper;
+        this.idempotencyStore = idempotencyStore;
     }
 
     @PostMapping("/")
@@ -35,13 +55,49 @@ public class UserController {
     }
 
     @GetMapping("/")
-    public ArrayList<User> getUsers() {
-        return userService.getUsers();
+    public void getUsers(
+            @RequestParam(required = false) String namePrefix,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String order,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            HttpServletResponse response) throws IOException {
+        Page<User> page;
+        try {
+            page = userService.getUsersPage(namePrefix, PageQuery.of(sort, order, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        JsonStreams.writePage(response, objectMapper, page);
+    }
+
+    // Bulk insert or replace from a JSON array or NDJSON body, persisted with a single batched write
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_JSON_VALUE, JsonStreams.NDJSON_VALUE})
+    public ImportReport importUsers(HttpServletRequest request) throws IOException {
+        ImportReport report = new ImportReport();
+        Map<Integer, User> users;
+        try {
+            users = JsonStreams.readItems(request, objectMapper, User.class, report);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        return userService.importUsers(users, report);
+    }
+
+    // Newline-delimited JSON export, one user per line, for bulk consumers
+    @GetMapping(value = "/export", produces = JsonStreams.NDJSON_VALUE)
+    public void exportUsers(HttpServletResponse response) throws IOException {
+        JsonStreams.writeLines(response, objectMapper, userService.streamUsers());
     }
 
     @GetMapping("/{userId}")
-    public User getUserById(@PathVariable UUID userId) {
-        return userService.getUserById(userId);
+    public ResponseEntity<User> getUserById(@PathVariable UUID userId) {
+        User user = userService.getUserById(userId);
+        if (user == null) {
+            return ResponseEntity.ok(null);
+        }
+        // The version doubles as the ETag, so a matching If-None-Match gets a bodiless 304
+        return ResponseEntity.ok().eTag(ETags.of(user)).body(user);
     }
 
     @GetMapping("/{userId}/orders")
@@ -49,10 +105,30 @@ public class UserController {
         return userService.getOrdersByUserId(userId);
     }
 
+    /**
+     * Post Request to check out the user's cart; 409 if the cart changed while the order was being placed.
+     * A retry carrying the same Idempotency-Key as an earlier checkout by the user gets that checkout's
+     * response, marked Idempotent-Replayed, without placing another order. The new order is linked by Location
+     */
     @PostMapping("/{userId}/checkout")
-    public String addOrderToUser(@PathVariable UUID userId) {
-        userService.addOrderToUser(userId);
-        return "Order added successfully";
+    public ResponseEntity<String> addOrderToUser(@PathVariable UUID userId,
+                                                 @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        IdempotencyStore.Outcome<Order> outcome;
+        try {
+            outcome = idempotencyKey == null
+                    ? new IdempotencyStore.Outcome<>(userService.addOrderToUser(userId), false)
+                    : idempotencyStore.execute(userId + ":" + idempotencyKey, () -> userService.addOrderToUser(userId));
+        } catch (OptimisticLockingFailureException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Cart was modified during checkout");
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (outcome.value() != null) {
+            response.location(URI.create("/order/" + outcome.value().getId()));
+        }
+        if (outcome.replayed()) {
+            response.header("Idempotent-Replayed", "true");
+        }
+        return response.body("Order added successfully");
     }
 
     @PostMapping("/{userId}/removeOrder")
@@ -82,7 +158,7 @@ public class UserController {
             userCart = new Cart();
             userCart.setId(UUID.randomUUID());
             userCart.setUserId(userId);
-            userCart.setProducts(new ArrayList<>());
+            userCart.setItems(new ArrayList<>());
             cartService.addCart(userCart);
         }
 
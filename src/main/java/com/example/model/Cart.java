@@ -1,15 +1,25 @@
 package com.example.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import org.springframework.stereotype.Component;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @Component
-public class Cart {
+public class Cart implements Versioned {
     private UUID id;
     private UUID userId;
-    private List<Product> products = new ArrayList<>();
+    private long version;
+    // One line per product, keyed by product ID so adding or removing a unit is a single lookup
+    private final Map<UUID, LineItem> lines = new LinkedHashMap<>();
+    // Running totals over the lines, adjusted on every change so reading them never walks the cart
+    private double totalPrice;
+    private int itemCount;
     
     // Default constructor
     public Cart() {
@@ -19,14 +29,13 @@ public class Cart {
     public Cart(UUID userId) {
         this.id = UUID.randomUUID();
         this.userId = userId;
-        this.products = new ArrayList<>();
     }
     
     // Full constructor
     public Cart(UUID id, UUID userId, List<Product> products) {
         this.id = id;
         this.userId = userId;
-        this.products = products != null ? products : new ArrayList<>();
+        setProducts(products);
     }
     
     // Getters and setters
@@ -46,11 +55,117 @@ public class Cart {
         this.userId = userId;
     }
     
+    // Read-only snapshot of the lines; change the cart through addProduct and removeProduct
+    public List<LineItem> getItems() {
+        return Collections.unmodifiableList(new ArrayList<>(lines.values()));
+    }
+    
+    // Replaces the lines; lines for the same product are merged into one
+    public void setItems(List<LineItem> items) {
+        clearItems();
+        if (items != null) {
+            for (LineItem item : items) {
+                addItem(item.getProductId(), item.getQuantity(), item.getUnitPrice());
+            }
+        }
+    }
+    
+    // Live view of the lines as one product reference per unit; not serialized
+    @JsonIgnore
     public List<Product> getProducts() {
-        return products;
+        return new LineItemProducts(lines.values(), this::addProduct,
+                item -> removeProduct(item.getProductId()), this::clearItems);
     }
     
+    // Replaces the lines with the given products; also how files written with embedded products are read
+    @JsonProperty("products")
     public void setProducts(List<Product> products) {
-        this.products = products;
+        clearItems();
+        if (products != null) {
+            for (Product product : products) {
+                addProduct(product);
+            }
+        }
+    }
+    
+    public void addProduct(Product product) {
+        addProduct(product, 1);
+    }
+    
+    /**
+     * Add units of the product, at its current price if the cart doesn't hold it yet
+     */
+    public void addProduct(Product product, int quantity) {
+        addItem(product.getId(), quantity, product.getPrice());
+    }
+    
+    public boolean removeProduct(UUID productId) {
+        return removeProduct(productId, 1);
+    }
+    
+    /**
+     * Take units of the product out of the cart, dropping its line once none are left.
+     * Returns false if the cart doesn't hold the product
+     */
+    public boolean removeProduct(UUID productId, int quantity) {
+        LineItem line = lines.get(productId);
+        if (line == null) {
+            return false;
+        }
+        int removed = Math.min(quantity, line.getQuantity());
+        if (line.getQuantity() > removed) {
+            line.setQuantity(line.getQuantity() - removed);
+        } else {
+            lines.remove(productId);
+        }
+        adjustTotals(-removed, line.getUnitPrice());
+        return true;
+    }
+    
+    public void clearItems() {
+        lines.clear();
+        totalPrice = 0;
+        itemCount = 0;
+    }
+    
+    // Sum of quantity * unit price over the lines; derived from the lines, so ignored when read back
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    public double getTotalPrice() {
+        return totalPrice;
+    }
+    
+    // Number of units across all lines
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    // A product already in the cart keeps the unit price captured when it was first added.
+    // Throws ArithmeticException, leaving the cart unchanged, if the line or the cart would hold more than
+    // Integer.MAX_VALUE units
+    private void addItem(UUID productId, int quantity, double unitPrice) {
+        LineItem line = lines.get(productId);
+        int lineQuantity = Math.addExact(line == null ? 0 : line.getQuantity(), quantity);
+        Math.addExact(itemCount, quantity);
+        if (line == null) {
+            lines.put(productId, new LineItem(productId, quantity, unitPrice));
+        } else {
+            line.setQuantity(lineQuantity);
+        }
+        adjustTotals(quantity, line == null ? unitPrice : line.getUnitPrice());
+    }
+
+    private void adjustTotals(int quantity, double unitPrice) {
+        itemCount = Math.addExact(itemCount, quantity);
+        // Reset once the cart is empty so rounding from repeated adds and removes can't accumulate
+        totalPrice = itemCount == 0 ? 0 : totalPrice + quantity * unitPrice;
     }
 }
@@ -0,0 +1,13 @@
+package com.example.model;
+
+import java.util.UUID;
+
+/**
+ * A cart's running totals without its lines, for clients that only need to show what the cart comes to
+ */
+public record CartSummary(UUID cartId, UUID userId, int itemCount, double totalPrice, long version) {
+
+    public static CartSummary of(Cart cart) {
+        return new CartSummary(cart.getId(), cart.getUserId(), cart.getItemCount(), cart.getTotalPrice(), cart.getVersion());
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.model;
+
+import java.util.UUID;
+
+/**
+ * A reference to a product held by a cart or order: the product's ID, how many units,
+ * and the unit price captured when the product was added. The product's other details
+ * are looked up from the product catalog only when they are needed
+ */
+public class LineItem {
+    private UUID productId;
+    private int quantity;
+    private double unitPrice;
+
+    // Default constructor
+    public LineItem() {
+    }
+
+    // Full constructor
+    public LineItem(UUID productId, int quantity, double unitPrice) {
+        this.productId = productId;
+        this.quantity = quantity;
+        this.unitPrice = unitPrice;
+    }
+
+    // A single unit of the product at its current price
+    public static LineItem of(Product product) {
+        return new LineItem(product.getId(), 1, product.getPrice());
+    }
+
+    public UUID getProductId() {
+        return productId;
+    }
+
+    public void setProductId(UUID productId) {
+        this.productId = productId;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public double getUnitPrice() {
+        return unitPrice;
+    }
+
+    public void setUnitPrice(double unitPrice) {
+        this.unitPrice = unitPrice;
+    }
+}
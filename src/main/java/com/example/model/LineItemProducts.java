@@ -0,0 +1,98 @@
+package com.example.model;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The line items of a cart or order seen as the flat product list they replaced: one element per unit,
+ * each a product reference carrying the ID and captured price but no name. Appending, removing and clearing
+ * are all handed to the owner, which takes one unit off the element's line on removal and keeps whatever it
+ * derives from its lines in step, so code written against the old product lists keeps working on the line
+ * items underneath
+ */
+class LineItemProducts extends AbstractList<Product> {
+    private final Collection<LineItem> items;
+    private final Consumer<Product> adder;
+    private final Consumer<LineItem> remover;
+    private final Runnable clearer;
+
+    LineItemProducts(Collection<LineItem> items, Consumer<Product> adder, Consumer<LineItem> remover,
+                     Runnable clearer) {
+        this.items = items;
+        this.adder = adder;
+        this.remover = remover;
+        this.clearer = clearer;
+    }
+
+    /**
+     * A view over a plain list of lines with nothing derived from them, edited in place
+     */
+    static LineItemProducts of(List<LineItem> items) {
+        return new LineItemProducts(items, product -> items.add(LineItem.of(product)), item -> {
+            if (item.getQuantity() > 1) {
+                item.setQuantity(item.getQuantity() - 1);
+            } else {
+                items.remove(item);
+            }
+        }, items::clear);
+    }
+
+    @Override
+    public Product get(int index) {
+        LineItem item = lineOf(index).next();
+        return new Product(item.getProductId(), null, item.getUnitPrice());
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (LineItem item : items) {
+            size += item.getQuantity();
+        }
+        return size;
+    }
+
+    @Override
+    public void add(int index, Product product) {
+        if (index != size()) {
+            throw new UnsupportedOperationException("Products can only be appended");
+        }
+        adder.accept(product);
+        modCount++;
+    }
+
+    @Override
+    public Product remove(int index) {
+        LineItem item = lineOf(index).next();
+        Product removed = new Product(item.getProductId(), null, item.getUnitPrice());
+        remover.accept(item);
+        modCount++;
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        clearer.run();
+        modCount++;
+    }
+
+    // An iterator positioned just before the line holding the given unit
+    private Iterator<LineItem> lineOf(int index) {
+        if (index >= 0) {
+            int remaining = index;
+            Iterator<LineItem> lines = items.iterator();
+            Iterator<LineItem> probe = items.iterator();
+            while (probe.hasNext()) {
+                remaining -= probe.next().getQuantity();
+                if (remaining < 0) {
+                    return lines;
+                }
+                lines.next();
+            }
+        }
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+    }
+}
@@ -1,16 +1,19 @@
 package com.example.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import org.springframework.stereotype.Component;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
 @Component
-public class Order {
+public class Order implements Versioned {
     private UUID id;
     private UUID userId;
     private double totalPrice;
-    private List<Product> products = new ArrayList<>();
+    private long version;
+    private List<LineItem> items = new ArrayList<>();
     
     // Default constructor
     public Order() {
@@ -20,7 +23,7 @@ public class Order {
     public Order(UUID userId) {
         this.id = UUID.randomUUID();
         this.userId = userId;
-        this.products = new ArrayList<>();
+        this.items = new ArrayList<>();
         this.totalPrice = 0.0;
     }
     
@@ -28,7 +31,7 @@ public class Order {
     public Order(UUID id, UUID userId, List<Product> products, double totalPrice) {
         this.id = id;
         this.userId = userId;
-        this.products = products != null ? products : new ArrayList<>();
+        this.items = toItems(products);
         this.totalPrice = totalPrice;
     }
     
@@ -36,7 +39,7 @@ public class Order {
     public Order(UUID id, UUID userId, double totalPrice, List<Product> products) {
         this.id = id;
         this.userId = userId;
-        this.products = products != null ? products : new ArrayList<>();
+        this.items = toItems(products);
         this.totalPrice = totalPrice;
     }
     
@@ -65,11 +68,41 @@ public class Order {
         this.totalPrice = totalPrice;
     }
     
+    public List<LineItem> getItems() {
+        return items;
+    }
+    
+    public void setItems(List<LineItem> items) {
+        this.items = items != null ? items : new ArrayList<>();
+    }
+    
+    // Live view of the line items as one product reference per unit; not serialized
+    @JsonIgnore
     public List<Product> getProducts() {
-        return products;
+        return LineItemProducts.of(items);
     }
     
+    // Replaces the line items with one line per product; also how files written with embedded products are read
+    @JsonProperty("products")
     public void setProducts(List<Product> products) {
-        this.products = products;
+        this.items = toItems(products);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    private static List<LineItem> toItems(List<Product> products) {
+        List<LineItem> items = new ArrayList<>();
+        if (products != null) {
+            for (Product product : products) {
+                items.add(LineItem.of(product));
+            }
+        }
+        return items;
     }
 }
@@ -4,10 +4,11 @@ import java.util.UUID;
 import org.springframework.stereotype.Component;
 
 @Component
-public class Product {
+public class Product implements Versioned {
     private UUID id;
     private String name;
     private double price;
+    private long version;
     
     // Default constructor
     public Product() {
@@ -50,4 +51,12 @@ public class Product {
     public void setPrice(double price) {
         this.price = price;
     }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
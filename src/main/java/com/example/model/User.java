@@ -1,14 +1,19 @@
 package com.example.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import org.springframework.stereotype.Component;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
 @Component
-public class User {
+public class User implements Versioned {
     private UUID id;
     private String name;
+    private long version;
+    // IDs of the user's orders in the order they were placed; the orders themselves are kept by OrderRepository
+    private List<UUID> orderIds = new ArrayList<>();
+    // Orders embedded whole by files written before orderIds, kept until they are moved into OrderRepository
     private List<Order> orders = new ArrayList<>();
 
     // Default constructor
@@ -46,11 +51,29 @@ public class User {
         this.name = name;
     }
 
+    public List<UUID> getOrderIds() {
+        return orderIds;
+    }
+
+    public void setOrderIds(List<UUID> orderIds) {
+        this.orderIds = orderIds != null ? orderIds : new ArrayList<>();
+    }
+
+    // Legacy embedded orders; only written while there are some left to migrate
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
     public List<Order> getOrders() {
         return orders;
     }
 
     public void setOrders(List<Order> orders) {
-        this.orders = orders;
+        this.orders = orders != null ? orders : new ArrayList<>();
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,11 @@
+package com.example.model;
+
+/**
+ * An entity carrying a version counter that the repositories bump on every change,
+ * used for conditional (compare-and-set) updates and HTTP ETags
+ */
+public interface Versioned {
+    long getVersion();
+
+    void setVersion(long version);
+}
@@ -0,0 +1,16 @@
+package com.example.repository;
+
+import java.util.UUID;
+
+/**
+ * A view over the cache that MainRepository keeps in step, under its cache write lock,
+ * with every insert, replace and delete
+ */
+interface CacheIndex<T> {
+
+    void put(UUID id, T entity);
+
+    void remove(UUID id);
+
+    void clear();
+}
@@ -5,13 +5,20 @@ import com.example.model.Product;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Repository
 @SuppressWarnings("rawtypes")
 public class CartRepository extends MainRepository<Cart> {
     @Value("${spring.application.cartDataPath}")
     private String cartDataPath;
+    // userId -> cart, so cart lookups on the checkout and add-to-cart paths skip the scan
+    private final SecondaryIndex<Cart, UUID> cartsByUserId = addIndex(Cart::getUserId);
+
     @Override
     protected String getDataPath() {
         return cartDataPath;
@@ -22,6 +29,11 @@ public class CartRepository extends MainRepository<Cart> {
         return Cart[].class;
     }
 
+    @Override
+    protected UUID getId(Cart cart) {
+        return cart.getId();
+    }
+
     public CartRepository() {
     }
 
@@ -30,51 +42,61 @@ public class CartRepository extends MainRepository<Cart> {
         return findAll();
     }
 
+    public Stream<Cart> streamCarts() {
+        return streamAll();
+    }
+
+    // A user's carts are found through cartsByUserId rather than a walk of the whole sort
+    public Page<Cart> getCartsPage(UUID userId, PageQuery query) {
+        if (userId != null) {
+            return findPage(query, cart -> userId.equals(cart.getUserId()), Map.of(), cartsByUserId, userId);
+        }
+        return findPage(query, cart -> true);
+    }
+
     public Cart getCartById(UUID cartId) {
-        ArrayList<Cart> carts = getCarts();
-        return carts.stream()
-                .filter(cart -> cart.getId().equals(cartId))
-                .findFirst()
-                .orElse(null);
+        return findById(cartId);
     }
 
     public Cart getCartByUserId(UUID userId) {
-        ArrayList<Cart> carts = getCarts();
-        return carts.stream()
-                .filter(cart -> cart.getUserId().equals(userId))
-                .findFirst()
-                .orElse(null);
+        List<Cart> carts = findByIndex(cartsByUserId, userId);
+        return carts.isEmpty() ? null : carts.get(0);
     }
 
     public void addCart(Cart userCart) {
         save(userCart);
     }
 
+    public void addCarts(List<Cart> carts) {
+        if (!carts.isEmpty()) {
+            saveBatch(carts);
+        }
+    }
+
     public void addProductToCart(UUID cartId, Product product) {
-        ArrayList<Cart> carts = getCarts();
-        carts.stream()
-                .filter(cart -> cart.getId().equals(cartId))
-                .findFirst()
-                .ifPresent(cart -> {
-                    cart.getProducts().add(product);
-                    saveAll(carts);
-                });
+        update(cartId, cart -> cart.addProduct(product));
+    }
+
+    public Cart addProductToCart(UUID cartId, Product product, long expectedVersion) {
+        return updateIfVersion(cartId, expectedVersion, cart -> cart.addProduct(product));
+    }
+
+    /**
+     * Apply a set of changes to one cart in a single read-modify-write, so they are persisted together
+     */
+    public Cart applyToCart(UUID cartId, Consumer<Cart> changes) {
+        return update(cartId, changes);
+    }
+
+    public Cart applyToCart(UUID cartId, Consumer<Cart> changes, long expectedVersion) {
+        return updateIfVersion(cartId, expectedVersion, changes);
     }
 
     public void deleteProductFromCart(UUID cartId, Product product) {
-        ArrayList<Cart> carts = getCarts();
-        carts.stream()
-                .filter(cart -> cart.getId().equals(cartId))
-                .findFirst()
-                .ifPresent(cart -> {
-                    cart.getProducts().removeIf(p -> p.getId().equals(product.getId()));
-                    saveAll(carts);
-                });
+        update(cartId, cart -> cart.removeProduct(product.getId()));
     }
 
     public void deleteCartById(UUID id) {
-        ArrayList<Cart> carts = getCarts();
-        carts.removeIf(cart -> cart.getId().equals(id));
-        saveAll(carts);
+        deleteById(id);
     }
 }
\ No newline at end of file
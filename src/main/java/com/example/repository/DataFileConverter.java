@@ -0,0 +1,69 @@
+package com.example.repository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+import com.example.model.Cart;
+import com.example.model.Order;
+import com.example.model.Product;
+import com.example.model.User;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+
+/**
+ * Converts a data file between JSON and Smile, the format of each side following its extension as it does for
+ * the repositories. Entities are read and written one at a time through their model classes, so any size of
+ * file converts in constant memory and values come out in the target format's native encoding (UUIDs as
+ * binary in Smile, strings in JSON). Only the data file is converted: fold a log-mode repository's log into
+ * it first, e.g. by running once in snapshot mode with migrateOnStartup.
+ *
+ * Run from the packaged jar with, for example,
+ *   java -cp target/app.jar -Dloader.main=com.example.repository.DataFileConverter
+ *       org.springframework.boot.loader.launch.PropertiesLauncher products /data/products.json /data/products.smile
+ * then point spring.application.productDataPath at the new file.
+ */
+public final class DataFileConverter {
+
+    private static final Map<String, Class<?>> ENTITY_TYPES = Map.of(
+            "users", User.class,
+            "products", Product.class,
+            "orders", Order.class,
+            "carts", Cart.class);
+
+    private DataFileConverter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3 || !ENTITY_TYPES.containsKey(args[0])) {
+            System.err.println("Usage: DataFileConverter <users|products|orders|carts> <source> <target>");
+            System.exit(2);
+        }
+        long count = convert(ENTITY_TYPES.get(args[0]), Path.of(args[1]), Path.of(args[2]));
+        System.out.printf("Converted %d %s: %s (%d bytes) -> %s (%d bytes)%n", count, args[0],
+                args[1], Files.size(Path.of(args[1])), args[2], Files.size(Path.of(args[2])));
+    }
+
+    /**
+     * Rewrite source as target, returning the number of entities converted. The target is written to a
+     * temp file and renamed into place, so it is never left half written
+     */
+    public static long convert(Class<?> entityType, Path source, Path target) throws IOException {
+        ObjectMapper reader = DataFormat.of(source.toString()).newObjectMapper();
+        ObjectMapper writer = DataFormat.of(target.toString()).newObjectMapper();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        long count = 0;
+        try (MappingIterator<?> entities = reader.readerFor(entityType).readValues(source.toFile());
+             SequenceWriter out = writer.writer().writeValuesAsArray(temp.toFile())) {
+            while (entities.hasNextValue()) {
+                out.write(entities.nextValue());
+                count++;
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return count;
+    }
+}
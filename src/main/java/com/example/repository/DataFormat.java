@@ -0,0 +1,41 @@
+package com.example.repository;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.util.JsonRecyclerPools;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Encodings a data file can be stored in, picked by the file's extension. Both carry the same data model,
+ * so the same entity classes read and write either; Smile is Jackson's binary JSON, which stores field
+ * names once per file, numbers in binary and UUIDs as 16 raw bytes instead of 36-character strings.
+ */
+enum DataFormat {
+    JSON,
+    SMILE;
+
+    /**
+     * SMILE for a path ending in ".smile", JSON for anything else
+     */
+    static DataFormat of(String path) {
+        return path.endsWith(".smile") ? SMILE : JSON;
+    }
+
+    boolean isBinary() {
+        return this == SMILE;
+    }
+
+    /**
+     * A mapper for this format sharing its buffers through the same pool as the repositories' JSON mapper
+     */
+    ObjectMapper newObjectMapper() {
+        if (this == SMILE) {
+            return new ObjectMapper(SmileFactory.builder()
+                    .recyclerPool(JsonRecyclerPools.sharedConcurrentDequePool())
+                    .build());
+        }
+        return new ObjectMapper(JsonFactory.builder()
+                .recyclerPool(JsonRecyclerPools.sharedConcurrentDequePool())
+                .build());
+    }
+}
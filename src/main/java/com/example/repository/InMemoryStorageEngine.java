@@ -0,0 +1,76 @@
+package com.example.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Storage that lives only as long as the process: every repository starts empty and nothing is written
+ * to disk. Useful for tests and as the baseline the file-backed engines are measured against.
+ */
+class InMemoryStorageEngine<T> implements StorageEngine<T> {
+
+    private final Function<T, UUID> idOf;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<UUID, T> entities = new LinkedHashMap<>();
+
+    InMemoryStorageEngine(Function<T, UUID> idOf) {
+        this.idOf = idOf;
+    }
+
+    @Override
+    public void scan(Consumer<T> consumer) {
+        List<T> snapshot;
+        lock.lock();
+        try {
+            snapshot = new ArrayList<>(entities.values());
+        } finally {
+            lock.unlock();
+        }
+        snapshot.forEach(consumer);
+    }
+
+    @Override
+    public T get(UUID id) {
+        lock.lock();
+        try {
+            return entities.get(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void batch(List<Change<T>> changes) {
+        lock.lock();
+        try {
+            for (Change<T> change : changes) {
+                if (change.entity() != null) {
+                    entities.put(change.id(), change.entity());
+                } else {
+                    entities.remove(change.id());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void replaceAll(Collection<T> replacement) {
+        lock.lock();
+        try {
+            entities.clear();
+            for (T entity : replacement) {
+                entities.put(idOf.apply(entity), entity);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,466 @@
+package com.example.repository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The original storage: one JSON array per data file, or the same array in Smile when the data path ends
+ * in ".smile" (see DataFormat). In "snapshot" persistence mode every batch rewrites the data file; in "log"
+ * mode each batch is appended to &lt;dataPath&gt;.log, in the data file's format, and compact folds the log
+ * back into the data file. Either way the data file is only ever replaced by an atomic rename of a fully
+ * written temp file. The engine keeps no entities of its own: lookups, and the whole-file writes of a
+ * snapshot-mode batch or a compaction, read the repository's cache through a read-only view of it.
+ */
+class JsonFileStorageEngine<T> implements StorageEngine<T> {
+
+    private final String dataPath;
+    private final Class<T> entityType;
+    private final Function<T, UUID> idOf;
+    private final DataFormat format;
+    private final ObjectMapper objectMapper;
+    // "snapshot" rewrites the data file on every change, "log" appends each change to <dataPath>.log
+    private final String persistenceMode;
+    // "always" fsyncs every write, "group" leaves pending writes to syncPending, "none" leaves it to the OS
+    private final String fsyncPolicy;
+    private final StorageMetrics metrics;
+    // Read-only view of the repository's cache: one entity by ID, and a copy of them all in file order.
+    // Both take the cache lock, so they are never called while holding this engine's lock
+    private final Function<UUID, T> cached;
+    private final Supplier<List<T>> cachedAll;
+
+    // Held while the files change; writes come one at a time from the repository's commit lock
+    private final ReentrantLock lock = new ReentrantLock();
+    // Modification time and size of the data file as this engine last wrote or read it
+    private volatile FileTime fileModifiedTime;
+    private volatile long fileSize = -1;
+    // Bumped before and after each rename over the data file, odd while one is under way, so isCurrent
+    // never mistakes the engine's own rewrite for a change made behind its back
+    private volatile long fileWrites;
+    // Bumped whenever the data file is rewritten, so a compaction can tell its snapshot went stale
+    private long snapshotGeneration;
+    private volatile long lastSnapshotMillis = System.currentTimeMillis();
+    // Records in the log segments since the data file was last rewritten
+    private final AtomicLong logRecordCount = new AtomicLong();
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    // Files and directories written since the last group fsync
+    private final Set<Path> unsynced = ConcurrentHashMap.newKeySet();
+
+    /**
+     * objectMapper is used for JSON data files; a Smile data file gets a Smile mapper of its own
+     */
+    JsonFileStorageEngine(String dataPath, Class<T> entityType, Function<T, UUID> idOf, ObjectMapper objectMapper,
+                          String persistenceMode, String fsyncPolicy, StorageMetrics metrics,
+                          Function<UUID, T> cached, Supplier<List<T>> cachedAll) {
+        this.dataPath = dataPath;
+        this.entityType = entityType;
+        this.idOf = idOf;
+        this.format = DataFormat.of(dataPath);
+        this.objectMapper = format.isBinary() ? format.newObjectMapper() : objectMapper;
+        this.persistenceMode = persistenceMode;
+        this.fsyncPolicy = fsyncPolicy;
+        this.metrics = metrics;
+        this.cached = cached;
+        this.cachedAll = cachedAll;
+    }
+
+    /**
+     * Read the data file one element at a time, so the entities are never held as an array as well.
+     * A snapshot-mode file goes straight to the consumer; in log mode the file and its log are gathered
+     * first, since a later log record can replace or delete any entity
+     */
+    @Override
+    public void scan(Consumer<T> consumer) {
+        lock.lock();
+        try {
+            long start = System.nanoTime();
+            LinkedHashMap<UUID, T> replayed = isLogStructured() ? new LinkedHashMap<>() : null;
+            Consumer<T> reader = replayed != null ? entity -> replayed.put(idOf.apply(entity), entity) : consumer;
+            File file = new File(dataPath);
+            if (file.exists()) {
+                metrics.bytesRead.increment(file.length());
+                try (MappingIterator<T> stored = objectMapper.readerFor(entityType).readValues(file)) {
+                    while (stored.hasNextValue()) {
+                        reader.accept(stored.nextValue());
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to read from JSON file", e);
+                }
+            }
+            recordFileState();
+            logRecordCount.set(0);
+            if (replayed != null) {
+                replayLog(new File(getCompactingLogPath()), replayed);
+                replayLog(new File(getLogPath()), replayed);
+            }
+            StorageMetrics.record(metrics.read, start);
+            if (replayed != null) {
+                replayed.values().forEach(consumer);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public T get(UUID id) {
+        return cached.apply(id);
+    }
+
+    @Override
+    public void batch(List<Change<T>> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        // The cache already holds these changes, and possibly later ones whose own batch will follow
+        List<T> snapshot = isLogStructured() ? null : cachedAll.get();
+        lock.lock();
+        try {
+            if (isLogStructured()) {
+                appendToLog(changes);
+            } else {
+                replaceDataFile(writeTempFile(".tmp", snapshot));
+                recordSnapshotWritten();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write to JSON file", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Rewrite the data file with exactly the given entities; in log mode this also empties the log
+     */
+    @Override
+    public void replaceAll(Collection<T> replacement) {
+        lock.lock();
+        try {
+            replaceDataFile(writeTempFile(".tmp", replacement));
+            recordSnapshotWritten();
+            if (isLogStructured()) {
+                new File(getLogPath()).delete();
+                new File(getCompactingLogPath()).delete();
+                logRecordCount.set(0);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write to JSON file", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Whether the data file is still the one this engine last read or wrote; a stat is all this costs
+     */
+    @Override
+    public boolean isCurrent() {
+        long writes = fileWrites;
+        BasicFileAttributes attributes = stat();
+        boolean matches = attributes == null
+                ? fileSize == -1
+                : attributes.size() == fileSize && attributes.lastModifiedTime().equals(fileModifiedTime);
+        // A mismatch seen while this engine was renaming its own file over the data file is that rename
+        return matches || writes % 2 == 1 || writes != fileWrites;
+    }
+
+    @Override
+    public void sync() {
+        if (!"none".equalsIgnoreCase(fsyncPolicy)) {
+            Path data = new File(dataPath).toPath().toAbsolutePath();
+            force(data);
+            force(new File(getLogPath()).toPath());
+            force(data.getParent());
+        }
+    }
+
+    /**
+     * Flush every file and directory written since the last run; only does work under the group fsync policy
+     */
+    @Override
+    public void syncPending() {
+        for (Path path : unsynced) {
+            unsynced.remove(path);
+            force(path);
+        }
+    }
+
+    @Override
+    public boolean isLogStructured() {
+        return "log".equalsIgnoreCase(persistenceMode);
+    }
+
+    /**
+     * Fold the log into a fresh data file. The log is rotated aside under the lock, the cache is copied and
+     * serialized without holding it, and the new data file is swapped in with an atomic rename; writes
+     * arriving meanwhile go to a new log segment. The copy is taken after the rotation, so it holds at least
+     * everything in the rotated segment; anything newer it holds is replayed again, harmlessly, from the new
+     * segment. Returns false if another compaction is running or the data set was replaced while this one ran.
+     */
+    @Override
+    public boolean compact() {
+        if (!compactionLock.tryLock()) {
+            return false;
+        }
+        try {
+            long generation;
+            lock.lock();
+            try {
+                generation = snapshotGeneration;
+                rotateLog();
+            } finally {
+                lock.unlock();
+            }
+            List<T> snapshot = cachedAll.get();
+
+            File temp = writeTempFile(".compacting.tmp", snapshot);
+
+            lock.lock();
+            try {
+                if (generation != snapshotGeneration) {
+                    temp.delete();
+                    return false;
+                }
+                replaceDataFile(temp);
+                recordSnapshotWritten();
+                new File(getCompactingLogPath()).delete();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to compact JSON file", e);
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    /**
+     * Bytes waiting in the log segments to be folded into the data file
+     */
+    @Override
+    public long getLogSize() {
+        return new File(getLogPath()).length() + new File(getCompactingLogPath()).length();
+    }
+
+    @Override
+    public long getLogRecordCount() {
+        return logRecordCount.get();
+    }
+
+    @Override
+    public long getLastSnapshotMillis() {
+        return lastSnapshotMillis;
+    }
+
+    private String getLogPath() {
+        return dataPath + ".log";
+    }
+
+    // Log segment being folded into the data file by a running (or interrupted) compaction
+    private String getCompactingLogPath() {
+        return getLogPath() + ".compacting";
+    }
+
+    /**
+     * Apply every complete record in the log to the entities read so far; a torn record left by a crash
+     * mid-append is cut off so later appends start cleanly. Callers must hold the lock
+     */
+    private void replayLog(File log, LinkedHashMap<UUID, T> entities) {
+        if (!log.exists()) {
+            return;
+        }
+        metrics.bytesRead.increment(log.length());
+        long validLength = 0;
+        try (MappingIterator<JsonNode> records = objectMapper.readerFor(JsonNode.class).readValues(log)) {
+            while (records.hasNextValue()) {
+                JsonNode record = records.nextValue();
+                // A UUID is a string in JSON but binary in Smile, so leave it to Jackson to tell which
+                UUID id = objectMapper.treeToValue(record.get("id"), UUID.class);
+                if ("DELETE".equals(record.get("op").asText())) {
+                    entities.remove(id);
+                } else {
+                    entities.put(id, objectMapper.treeToValue(record.get("entity"), entityType));
+                }
+                logRecordCount.incrementAndGet();
+                validLength = records.getParser().currentLocation().getByteOffset();
+            }
+        } catch (IOException | RuntimeException e) {
+            truncateLog(log, validLength);
+        }
+    }
+
+    private void truncateLog(File log, long length) {
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            file.setLength(length);
+            // JSON records are one per line; Smile records follow each other directly
+            if (length > 0 && !format.isBinary()) {
+                file.seek(length);
+                file.write('\n');
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to repair log file", e);
+        }
+    }
+
+    // Callers must hold the lock
+    private void appendToLog(List<Change<T>> changes) {
+        long start = System.nanoTime();
+        Path logPath = new File(getLogPath()).toPath();
+        try (FileChannel log = FileChannel.open(logPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            for (Change<T> change : changes) {
+                LogRecord record = change.entity() != null
+                        ? new LogRecord("PUT", change.id(), change.entity())
+                        : new LogRecord("DELETE", change.id(), null);
+                // Each Smile record starts with its own header, which resets the back-references the parser keeps
+                records.write(objectMapper.writeValueAsBytes(record));
+                if (!format.isBinary()) {
+                    records.write('\n');
+                }
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(records.toByteArray());
+            while (buffer.hasRemaining()) {
+                log.write(buffer);
+            }
+            metrics.bytesWritten.increment(buffer.capacity());
+            if ("always".equalsIgnoreCase(fsyncPolicy)) {
+                long syncStart = System.nanoTime();
+                log.force(false);
+                StorageMetrics.record(metrics.fsync, syncStart);
+            } else if ("group".equalsIgnoreCase(fsyncPolicy)) {
+                unsynced.add(logPath);
+            }
+            logRecordCount.addAndGet(changes.size());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to append to log file", e);
+        }
+        StorageMetrics.record(metrics.logWrite, start);
+    }
+
+    // Callers must hold the lock
+    private void recordSnapshotWritten() {
+        snapshotGeneration++;
+        lastSnapshotMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Serialize to a temp file next to the data file and, unless fsyncPolicy is none, flush it
+     * to disk, so that renaming it over the data file can never expose a partial write
+     */
+    private File writeTempFile(String suffix, Collection<T> value) throws IOException {
+        long start = System.nanoTime();
+        File temp = new File(dataPath + suffix);
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValue(out, value);
+            if (!"none".equalsIgnoreCase(fsyncPolicy)) {
+                long syncStart = System.nanoTime();
+                out.getFD().sync();
+                StorageMetrics.record(metrics.fsync, syncStart);
+            }
+            metrics.bytesWritten.increment(out.getChannel().position());
+        }
+        StorageMetrics.record(metrics.snapshotWrite, start);
+        return temp;
+    }
+
+    /**
+     * Atomically swap a fully written temp file in as the data file. Readers see either the old
+     * or the new contents; the directory entry is flushed now or on the next group fsync.
+     * Callers must hold the lock
+     */
+    private void replaceDataFile(File temp) throws IOException {
+        Path target = new File(dataPath).toPath();
+        fileWrites++;
+        try {
+            Files.move(temp.toPath(), target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            recordFileState();
+        } finally {
+            fileWrites++;
+        }
+        Path directory = target.toAbsolutePath().getParent();
+        if ("always".equalsIgnoreCase(fsyncPolicy)) {
+            force(directory);
+        } else if ("group".equalsIgnoreCase(fsyncPolicy)) {
+            unsynced.add(directory);
+        }
+    }
+
+    private void force(Path path) {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+            StorageMetrics.record(metrics.fsync, start);
+        } catch (IOException e) {
+            // Deleted since it was written, or a directory the platform can't open for syncing
+        }
+    }
+
+    /**
+     * Move the active log aside so new appends start a fresh segment; a segment left behind
+     * by an interrupted compaction absorbs the active one instead. Callers must hold the lock.
+     */
+    private void rotateLog() throws IOException {
+        File log = new File(getLogPath());
+        File compacting = new File(getCompactingLogPath());
+        if (!log.exists()) {
+            return;
+        }
+        if (compacting.exists()) {
+            Files.write(compacting.toPath(), Files.readAllBytes(log.toPath()), StandardOpenOption.APPEND);
+            Files.delete(log.toPath());
+        } else {
+            Files.move(log.toPath(), compacting.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        logRecordCount.set(0);
+    }
+
+    private void recordFileState() {
+        BasicFileAttributes attributes = stat();
+        fileModifiedTime = attributes != null ? attributes.lastModifiedTime() : null;
+        fileSize = attributes != null ? attributes.size() : -1;
+    }
+
+    private BasicFileAttributes stat() {
+        try {
+            return Files.readAttributes(new File(dataPath).toPath(), BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * One line of the log: the new state of an entity, or its deletion
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private record LogRecord(String op, UUID id, Object entity) {
+    }
+}
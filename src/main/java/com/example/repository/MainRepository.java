@@ -1,62 +1,838 @@
 package com.example.repository;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Primary;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Repository;
 
+import com.example.model.Versioned;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.util.JsonRecyclerPools;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
 @Primary
 @Repository
-public abstract class MainRepository<T> {
+public abstract class MainRepository<T extends Versioned> {
+
+    // Jackson recycles its read and write buffers per thread by default, which never pays off when every request
+    // runs on a fresh virtual thread; a shared pool is reused under either thread model
+    protected ObjectMapper objectMapper = new ObjectMapper(JsonFactory.builder()
+            .recyclerPool(JsonRecyclerPools.sharedConcurrentDequePool())
+            .build());
+
+    // "json" keeps the data file as a JSON array, "memory" keeps nothing beyond the process; see StorageEngine
+    @Value("${spring.application.storageEngine:json}")
+    private String storageEngine = "json";
+
+    // For the json engine: "snapshot" rewrites the data file on every change, "log" appends each change to <dataPath>.log
+    @Value("${spring.application.persistenceMode:snapshot}")
+    private String persistenceMode = "snapshot";
+
+    // "always" fsyncs every write, "group" fsyncs pending writes every fsyncIntervalMs, "none" leaves it to the OS
+    @Value("${spring.application.fsyncPolicy:always}")
+    private String fsyncPolicy = "always";
+
+    // Resident copy of the data file keyed by entity ID, kept in file order
+    private final LinkedHashMap<UUID, T> cache = new LinkedHashMap<>();
+    private final ReentrantReadWriteLock cacheLock = new ReentrantReadWriteLock();
+    // Secondary and sorted indexes registered by subclasses, maintained alongside the cache
+    private final List<CacheIndex<T>> indexes = new ArrayList<>();
+    // Sorted indexes by the name a page query asks for them under
+    private final Map<String, SortedIndex<T, ?>> sortedIndexes = new HashMap<>();
+    // Striped per-entity locks serializing concurrent read-modify-write cycles on the same entity
+    private final ReentrantLock[] entityLocks = new ReentrantLock[64];
+
+    // How long a commit leader waits for more writers to join its batch; 0 batches only what queued up behind the previous write
+    @Value("${spring.application.groupCommitWindowMs:0}")
+    private long groupCommitWindowMs = 0;
+    // Held by the one thread writing a batch; writers queue on it and usually find their change already written
+    private final ReentrantLock commitLock = new ReentrantLock();
+    // Changes applied to the cache but not yet written, guarded by the cache write lock
+    private List<StorageEngine.Change<T>> pendingRecords = new ArrayList<>();
+    private long enqueuedSequence;
+    private volatile long committedSequence;
+    // Where the cache is loaded from and its changes are written to, created when the cache is first loaded
+    private StorageEngine<T> engine;
+    // Shared journal for changes committed by a UnitOfWork; null for a repository created on its own
+    private TransactionJournal journal;
+    // File I/O and lock wait meters, recording nothing until a registry is injected
+    private StorageMetrics metrics = new StorageMetrics(getClass().getSimpleName());
 
-    protected ObjectMapper objectMapper = new ObjectMapper();
-    
     protected abstract String getDataPath();
     protected abstract Class<T[]> getArrayType();
+    protected abstract UUID getId(T entity);
 
     public MainRepository(){
+        for (int i = 0; i < entityLocks.length; i++) {
+            entityLocks[i] = new ReentrantLock();
+        }
+        addSortedIndex("id", UUID.class, this::getId);
+    }
+
+    @Autowired(required = false)
+    public void setJournal(TransactionJournal journal) {
+        this.journal = journal;
+        journal.register(this);
+    }
+
+    @Autowired(required = false)
+    public void setMeterRegistry(MeterRegistry registry) {
+        metrics = new StorageMetrics(registry, getClass().getSimpleName());
+        Gauge.builder("repository.entities", cache, Map::size)
+                .description("Entities held in the cache")
+                .tag("repository", getClass().getSimpleName())
+                .register(registry);
+    }
 
+    /**
+     * Load the storage engine's entities into the cache once the data path has been injected, then
+     * reapply units of work the journal holds that didn't reach the data file before a crash
+     */
+    @PostConstruct
+    public void loadCache() {
+        cacheLock.writeLock().lock();
+        try {
+            if (engine == null) {
+                engine = createStorageEngine();
+            }
+            reload();
+            if (journal != null) {
+                journal.replay(this);
+            }
+        } finally {
+            cacheLock.writeLock().unlock();
+        }
     }
+
     public ArrayList<T> findAll() {
+        cacheLock.readLock().lock();
         try {
-            File file = new File(getDataPath());
-            if (!file.exists()) {
-                return new ArrayList<>();
+            return new ArrayList<>(cache.values());
+        } finally {
+            cacheLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stream every entity in file order without building a list of them. The stream runs over a
+     * point-in-time snapshot of the cache's references, so a slow consumer (such as a response being
+     * written to a client) never holds the read lock while it works through the entities
+     */
+    @SuppressWarnings("unchecked")
+    public Stream<T> streamAll() {
+        Object[] snapshot;
+        cacheLock.readLock().lock();
+        try {
+            snapshot = cache.values().toArray();
+        } finally {
+            cacheLock.readLock().unlock();
+        }
+        return Arrays.stream(snapshot).map(entity -> (T) entity);
+    }
+
+    /**
+     * Point lookup through the ID index, or null if no entity has that ID. Inside a unit of work
+     * this sees what the unit has staged for the ID
+     */
+    @SuppressWarnings("unchecked")
+    public T findById(UUID id) {
+        UnitOfWork unit = UnitOfWork.current();
+        UnitOfWork.Staged staged = unit != null ? unit.get(this, id) : null;
+        if (staged != null) {
+            return (T) staged.entity();
+        }
+        cacheLock.readLock().lock();
+        try {
+            return cache.get(id);
+        } finally {
+            cacheLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Entities whose indexed key equals the given key, in file order
+     */
+    protected <K> List<T> findByIndex(SecondaryIndex<T, K> index, K key) {
+        cacheLock.readLock().lock();
+        try {
+            List<T> result = new ArrayList<>();
+            for (UUID id : index.get(key)) {
+                result.add(cache.get(id));
             }
-            T[] array = objectMapper.readValue(file, getArrayType()); // Deserialize to array first
-            return new ArrayList<>(Arrays.asList(array));
-            // return objectMapper.readValue(file, new TypeReference<ArrayList<T>>(){});
+            return result;
+        } finally {
+            cacheLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * One page of the entities matching the filter. An unpaged query streams every match in file order,
+     * filtered as the page is read; otherwise the query's sorted index is walked from just after its
+     * cursor, so fetching a page costs the same however deep into the collection it is
+     */
+    public Page<T> findPage(PageQuery query, Predicate<T> filter) {
+        return findPage(query, filter, Map.of());
+    }
+
+    /**
+     * As above, with the ranges of keys the filter can match by sort name. Sorting by one of those keys
+     * walks only its range instead of the whole index
+     */
+    protected Page<T> findPage(PageQuery query, Predicate<T> filter, Map<String, SortedIndex.KeyRange<?>> ranges) {
+        if (query.isUnpaged()) {
+            return new Page<>(streamAll().filter(filter), null);
+        }
+        SortedIndex<T, ?> index = sortedIndex(query);
+        return findPage(index, query, filter, ranges.get(index.getName()), null);
+    }
+
+    /**
+     * As above, narrowed to the entities whose secondary index key equals the given key, so a page looks
+     * only at those entities instead of walking the whole sorted index. The filter must still reject the
+     * rest, as it is what an unkeyed query would apply
+     */
+    protected <K> Page<T> findPage(PageQuery query, Predicate<T> filter, Map<String, SortedIndex.KeyRange<?>> ranges,
+                                   SecondaryIndex<T, K> narrowBy, K key) {
+        if (query.isUnpaged()) {
+            return new Page<>(findByIndex(narrowBy, key).stream().filter(filter), null);
+        }
+        SortedIndex<T, ?> index = sortedIndex(query);
+        return findPage(index, query, filter, ranges.get(index.getName()), () -> narrowBy.get(key));
+    }
+
+    private SortedIndex<T, ?> sortedIndex(PageQuery query) {
+        SortedIndex<T, ?> index = sortedIndexes.get(query.sort() == null ? "id" : query.sort());
+        if (index == null) {
+            throw new IllegalArgumentException("Cannot sort by " + query.sort());
+        }
+        return index;
+    }
+
+    // The range was registered under this index's name, so its keys are the index's key type. With ids, only
+    // the entities they supply (read under the cache lock) are paged
+    @SuppressWarnings("unchecked")
+    private <K extends Comparable<? super K>> Page<T> findPage(SortedIndex<T, K> index, PageQuery query, Predicate<T> filter,
+                                                               SortedIndex.KeyRange<?> range,
+                                                               Supplier<Collection<UUID>> ids) {
+        SortedIndex.Position<K> after = query.cursor() == null ? null : decodeCursor(index, query.cursor());
+        List<T> items;
+        SortedIndex.Position<K> last = null;
+        cacheLock.readLock().lock();
+        try {
+            SortedIndex.KeyRange<K> keys = (SortedIndex.KeyRange<K>) range;
+            items = ids == null
+                    ? index.page(after, query.descending(), query.limit(), filter, keys)
+                    : index.page(ids.get(), after, query.descending(), query.limit(), filter, keys);
+            if (query.limit() != null && items.size() == query.limit()) {
+                last = index.positionOf(getId(items.get(items.size() - 1)));
+            }
+        } finally {
+            cacheLock.readLock().unlock();
+        }
+        return new Page<>(items.stream(), last == null ? null : encodeCursor(index, last));
+    }
+
+    /**
+     * A cursor is the sort name, key and ID of the last entity on a page, as base64url JSON
+     */
+    private <K extends Comparable<? super K>> String encodeCursor(SortedIndex<T, K> index, SortedIndex.Position<K> position) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(new Object[]{index.getName(), position.key(), position.id()});
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
         } catch (IOException e) {
-            throw new RuntimeException("Failed to read from JSON file", e);
+            throw new RuntimeException("Failed to encode cursor", e);
         }
     }
 
+    private <K extends Comparable<? super K>> SortedIndex.Position<K> decodeCursor(SortedIndex<T, K> index, String cursor) {
+        JsonNode fields;
+        try {
+            fields = objectMapper.readTree(Base64.getUrlDecoder().decode(cursor));
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+        if (fields == null || fields.size() != 3 || !index.getName().equals(fields.get(0).asText())) {
+            throw new IllegalArgumentException("Cursor does not belong to sort " + index.getName());
+        }
+        try {
+            K key = objectMapper.treeToValue(fields.get(1), index.getKeyType());
+            return new SortedIndex.Position<>(key, UUID.fromString(fields.get(2).asText()));
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    /**
+     * Replace the whole data set; in log mode this also folds the log into the data file
+     */
     public void saveAll(ArrayList<T> data) {
+        commitLock.lock();
         try {
-            objectMapper.writeValue(new File(getDataPath()), data);
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to write to JSON file", e);
+            cacheLock.writeLock().lock();
+            try {
+                clearCache();
+                for (T entity : data) {
+                    putInCache(getId(entity), entity);
+                }
+                engine.replaceAll(cache.values());
+                // The new data file supersedes anything still waiting to be written
+                pendingRecords = new ArrayList<>();
+                committedSequence = enqueuedSequence;
+            } finally {
+                cacheLock.writeLock().unlock();
+            }
+        } finally {
+            commitLock.unlock();
         }
     }
 
+    /**
+     * Rewrite the data file from the cache in the current format, folding in the log in log mode.
+     * Used to migrate a file written by an older model in one step instead of as it is next written
+     */
+    public void rewrite() {
+        refreshIfChanged();
+        commitLock.lock();
+        try {
+            cacheLock.writeLock().lock();
+            try {
+                engine.replaceAll(cache.values());
+                pendingRecords = new ArrayList<>();
+                committedSequence = enqueuedSequence;
+            } finally {
+                cacheLock.writeLock().unlock();
+            }
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * Insert the entity, or replace the stored entity with the same ID
+     */
     public void save(T data){
-        ArrayList<T> allData = findAll();
-        allData.add(data);
-        saveAll(allData);
+        saveBatch(List.of(data));
+    }
+
+    /**
+     * Insert or replace several entities with a single write; a replaced entity's version moves past the stored one
+     */
+    public void saveBatch(List<T> data) {
+        refreshIfChanged();
+        UnitOfWork unit = UnitOfWork.current();
+        if (unit != null) {
+            for (T entity : data) {
+                T current = findById(getId(entity));
+                if (current != null) {
+                    entity.setVersion(current.getVersion() + 1);
+                }
+                unit.stage(this, getId(entity), entity, storedVersion(getId(entity)));
+            }
+            return;
+        }
+        List<ReentrantLock> locks = lockEntities(data.stream().map(this::getId).toList());
+        long sequence;
+        try {
+            for (T entity : data) {
+                T current = findById(getId(entity));
+                if (current != null) {
+                    entity.setVersion(current.getVersion() + 1);
+                }
+            }
+            sequence = enqueuePuts(data);
+        } finally {
+            unlockEntities(locks);
+        }
+        commit(sequence);
+    }
+
+    /**
+     * Read-modify-write one entity: the mutator runs on a private copy while the entity's lock
+     * stripe is held, and the copy then replaces the cached entity. Returns the updated entity,
+     * or null if there is no entity with that ID.
+     */
+    public T update(UUID id, Consumer<T> mutator) {
+        List<T> updated = applyUpdates(List.of(id), null, mutator);
+        return updated.isEmpty() ? null : updated.get(0);
+    }
+
+    /**
+     * Compare-and-set variant of update: the mutator only runs if the stored entity is still at
+     * expectedVersion, otherwise OptimisticLockingFailureException is thrown. Returns null if
+     * there is no entity with that ID.
+     */
+    public T updateIfVersion(UUID id, long expectedVersion, Consumer<T> mutator) {
+        List<T> updated = applyUpdates(List.of(id), expectedVersion, mutator);
+        return updated.isEmpty() ? null : updated.get(0);
     }
 
+    /**
+     * Read-modify-write several entities as one write, skipping IDs that don't exist
+     */
+    public List<T> updateAll(Collection<UUID> ids, Consumer<T> mutator) {
+        return applyUpdates(ids, null, mutator);
+    }
 
+    private List<T> applyUpdates(Collection<UUID> ids, Long expectedVersion, Consumer<T> mutator) {
+        refreshIfChanged();
+        UnitOfWork unit = UnitOfWork.current();
+        if (unit != null) {
+            // No locks while staging; the unit's commit checks nothing else changed these entities meanwhile
+            List<T> updated = mutateCopies(ids, expectedVersion, mutator);
+            for (T entity : updated) {
+                unit.stage(this, getId(entity), entity, storedVersion(getId(entity)));
+            }
+            return updated;
+        }
+        List<ReentrantLock> locks = lockEntities(ids);
+        List<T> updated;
+        long sequence;
+        try {
+            updated = mutateCopies(ids, expectedVersion, mutator);
+            if (updated.isEmpty()) {
+                return updated;
+            }
+            sequence = enqueuePuts(updated);
+        } finally {
+            unlockEntities(locks);
+        }
+        commit(sequence);
+        return updated;
+    }
+
+    private List<T> mutateCopies(Collection<UUID> ids, Long expectedVersion, Consumer<T> mutator) {
+        List<T> updated = new ArrayList<>();
+        for (UUID id : new LinkedHashSet<>(ids)) {
+            T current = findById(id);
+            if (current == null) {
+                continue;
+            }
+            if (expectedVersion != null && current.getVersion() != expectedVersion) {
+                throw new OptimisticLockingFailureException("Entity " + id + " is at version "
+                        + current.getVersion() + ", expected " + expectedVersion);
+            }
+            T copy = copyOf(current);
+            mutator.accept(copy);
+            copy.setVersion(current.getVersion() + 1);
+            updated.add(copy);
+        }
+        return updated;
+    }
+
+    /**
+     * Remove the entity with the given ID, returning whether it existed
+     */
+    public boolean deleteById(UUID id) {
+        refreshIfChanged();
+        UnitOfWork unit = UnitOfWork.current();
+        if (unit != null) {
+            if (findById(id) == null) {
+                return false;
+            }
+            unit.stage(this, id, null, storedVersion(id));
+            return true;
+        }
+        ReentrantLock lock = lockFor(id);
+        long sequence;
+        StorageMetrics.lock(lock, metrics.entityLockWait);
+        try {
+            StorageMetrics.lock(cacheLock.writeLock(), metrics.cacheLockWait);
+            try {
+                if (!cache.containsKey(id)) {
+                    return false;
+                }
+                removeFromCache(id);
+                pendingRecords.add(new StorageEngine.Change<>(id, null));
+                sequence = ++enqueuedSequence;
+            } finally {
+                cacheLock.writeLock().unlock();
+            }
+        } finally {
+            lock.unlock();
+        }
+        commit(sequence);
+        return true;
+    }
 
     public void overrideData(ArrayList<T> data) {
         saveAll(data);
     }
 
-    
+    /**
+     * Fold the storage engine's log into a fresh copy of the data; see StorageEngine.compact
+     */
+    public boolean compact() {
+        return engine.compact();
+    }
+
+    public boolean isLogMode() {
+        return engine.isLogStructured();
+    }
 
+    /**
+     * Bytes waiting in the log segments to be folded into the data file
+     */
+    public long getLogSize() {
+        return engine.getLogSize();
+    }
+
+    public long getLogRecordCount() {
+        return engine.getLogRecordCount();
+    }
 
+    public long getLastSnapshotMillis() {
+        return engine.getLastSnapshotMillis();
+    }
+
+    /**
+     * Register a secondary index on a key derived from each entity; call from a field initializer
+     */
+    protected <K> SecondaryIndex<T, K> addIndex(Function<T, K> keyExtractor) {
+        SecondaryIndex<T, K> index = new SecondaryIndex<>(keyExtractor);
+        indexes.add(index);
+        return index;
+    }
+
+    /**
+     * Register an order that page queries can sort by under the given name; call from a constructor
+     */
+    protected <K extends Comparable<? super K>> void addSortedIndex(String name, Class<K> keyType, Function<T, K> keyExtractor) {
+        SortedIndex<T, K> index = new SortedIndex<>(name, keyType, keyExtractor);
+        indexes.add(index);
+        sortedIndexes.put(name, index);
+    }
+
+    TransactionJournal getJournal() {
+        return journal;
+    }
+
+    List<ReentrantLock> lockStaged(Collection<UUID> ids) {
+        return lockEntities(ids);
+    }
+
+    void unlockStaged(List<ReentrantLock> locks) {
+        unlockEntities(locks);
+    }
+
+    /**
+     * Check that every entity a unit of work staged a change for is still at the version the change was
+     * based on. Callers must hold the entities' lock stripes, so the check stays true until they are applied
+     */
+    void checkStaged(Map<UUID, UnitOfWork.Staged> changes) {
+        for (Map.Entry<UUID, UnitOfWork.Staged> change : changes.entrySet()) {
+            Long stored = storedVersion(change.getKey());
+            if (!Objects.equals(stored, change.getValue().baseVersion())) {
+                throw new OptimisticLockingFailureException("Entity " + change.getKey() + " is at version "
+                        + stored + ", expected " + change.getValue().baseVersion());
+            }
+        }
+    }
+
+    /**
+     * Apply a unit of work's changes to the cache and queue them for this repository's next write,
+     * returning their sequence number. Callers must hold the entities' lock stripes
+     */
+    @SuppressWarnings("unchecked")
+    long applyStaged(Map<UUID, UnitOfWork.Staged> changes) {
+        cacheLock.writeLock().lock();
+        try {
+            for (Map.Entry<UUID, UnitOfWork.Staged> change : changes.entrySet()) {
+                T entity = (T) change.getValue().entity();
+                if (entity != null) {
+                    putInCache(change.getKey(), entity);
+                    pendingRecords.add(new StorageEngine.Change<>(change.getKey(), entity));
+                } else if (cache.containsKey(change.getKey())) {
+                    removeFromCache(change.getKey());
+                    pendingRecords.add(new StorageEngine.Change<>(change.getKey(), null));
+                }
+            }
+            return ++enqueuedSequence;
+        } finally {
+            cacheLock.writeLock().unlock();
+        }
+    }
+
+    void commitStaged(long sequence) {
+        commit(sequence);
+    }
+
+    /**
+     * Write everything queued so far and sync the written files, whatever the fsync policy short of "none",
+     * so the journal records covering them can be dropped
+     */
+    void flushDurably() {
+        refreshIfChanged();
+        long target;
+        cacheLock.readLock().lock();
+        try {
+            target = enqueuedSequence;
+        } finally {
+            cacheLock.readLock().unlock();
+        }
+        commit(target);
+        engine.sync();
+    }
+
+    /**
+     * Reapply one change from the journal unless the data file already has it, and queue it to be written.
+     * Callers must hold the write lock
+     */
+    @SuppressWarnings("unchecked")
+    void replayJournalChange(String op, UUID id, long version, JsonNode entity) throws IOException {
+        T current = cache.get(id);
+        if ("DELETE".equals(op)) {
+            if (current == null || current.getVersion() > version) {
+                return;
+            }
+            removeFromCache(id);
+            pendingRecords.add(new StorageEngine.Change<>(id, null));
+        } else {
+            if (current != null && current.getVersion() >= version) {
+                return;
+            }
+            T replayed = objectMapper.treeToValue(entity, (Class<T>) getArrayType().getComponentType());
+            putInCache(id, replayed);
+            pendingRecords.add(new StorageEngine.Change<>(id, replayed));
+        }
+        enqueuedSequence++;
+    }
+
+    // Version of the entity in the cache, ignoring anything staged; null if there is none
+    private Long storedVersion(UUID id) {
+        cacheLock.readLock().lock();
+        try {
+            T entity = cache.get(id);
+            return entity != null ? entity.getVersion() : null;
+        } finally {
+            cacheLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The engine named by spring.application.storageEngine, configured from this repository's properties
+     */
+    @SuppressWarnings("unchecked")
+    protected StorageEngine<T> createStorageEngine() {
+        Class<T> entityType = (Class<T>) getArrayType().getComponentType();
+        if ("memory".equalsIgnoreCase(storageEngine)) {
+            return new InMemoryStorageEngine<>(this::getId);
+        }
+        if ("json".equalsIgnoreCase(storageEngine)) {
+            return new JsonFileStorageEngine<>(getDataPath(), entityType, this::getId, objectMapper,
+                    persistenceMode, fsyncPolicy, metrics, this::cached, this::cachedAll);
+        }
+        throw new IllegalStateException("Unknown storage engine: " + storageEngine);
+    }
+
+    // Apply puts to the cache and queue them for the next commit, returning their sequence number
+    private long enqueuePuts(List<T> data) {
+        StorageMetrics.lock(cacheLock.writeLock(), metrics.cacheLockWait);
+        try {
+            for (T entity : data) {
+                putInCache(getId(entity), entity);
+                pendingRecords.add(new StorageEngine.Change<>(getId(entity), entity));
+            }
+            return ++enqueuedSequence;
+        } finally {
+            cacheLock.writeLock().unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T copyOf(T entity) {
+        try {
+            return objectMapper.readValue(objectMapper.writeValueAsBytes(entity),
+                    (Class<T>) getArrayType().getComponentType());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to copy entity", e);
+        }
+    }
+
+    private ReentrantLock lockFor(UUID id) {
+        return entityLocks[Math.floorMod(Objects.hashCode(id), entityLocks.length)];
+    }
+
+    /**
+     * Take the lock stripes of the given IDs in stripe order, so that two batches touching the
+     * same entities can never deadlock. Lock stripes are always taken before the cache lock.
+     */
+    private List<ReentrantLock> lockEntities(Collection<UUID> ids) {
+        TreeMap<Integer, ReentrantLock> stripes = new TreeMap<>();
+        for (UUID id : ids) {
+            int stripe = Math.floorMod(Objects.hashCode(id), entityLocks.length);
+            stripes.put(stripe, entityLocks[stripe]);
+        }
+        List<ReentrantLock> locks = new ArrayList<>(stripes.values());
+        for (ReentrantLock lock : locks) {
+            StorageMetrics.lock(lock, metrics.entityLockWait);
+        }
+        return locks;
+    }
+
+    private void unlockEntities(List<ReentrantLock> locks) {
+        for (ReentrantLock lock : locks) {
+            lock.unlock();
+        }
+    }
+
+    // Read-only view of the cache for the storage engine, so it needn't keep a copy of the entities itself
+    private T cached(UUID id) {
+        cacheLock.readLock().lock();
+        try {
+            return cache.get(id);
+        } finally {
+            cacheLock.readLock().unlock();
+        }
+    }
+
+    private List<T> cachedAll() {
+        cacheLock.readLock().lock();
+        try {
+            return new ArrayList<>(cache.values());
+        } finally {
+            cacheLock.readLock().unlock();
+        }
+    }
+
+    // Every change to the cache goes through these three methods so the secondary indexes stay in step
+    private void putInCache(UUID id, T entity) {
+        cache.put(id, entity);
+        for (CacheIndex<T> index : indexes) {
+            index.put(id, entity);
+        }
+    }
+
+    private void removeFromCache(UUID id) {
+        cache.remove(id);
+        for (CacheIndex<T> index : indexes) {
+            index.remove(id);
+        }
+    }
+
+    private void clearCache() {
+        cache.clear();
+        for (CacheIndex<T> index : indexes) {
+            index.clear();
+        }
+    }
+
+    /**
+     * Re-read storage if it was changed behind the repository's back (e.g. the data file was replaced on the
+     * mounted volume). Runs every refreshIntervalMs, and writes check first so they never land on a stale
+     * cache, but reads serve the cache without touching the file; call this to pick up an outside change at once
+     */
+    @Scheduled(fixedDelayString = "${spring.application.refreshIntervalMs:1000}")
+    public void refresh() {
+        refreshIfChanged();
+    }
+
+    private void refreshIfChanged() {
+        if (engine.isCurrent()) {
+            return;
+        }
+        cacheLock.writeLock().lock();
+        try {
+            if (!engine.isCurrent()) {
+                reload();
+            }
+        } finally {
+            cacheLock.writeLock().unlock();
+        }
+    }
+
+    // Callers must hold the write lock
+    private void reload() {
+        clearCache();
+        engine.scan(entity -> putInCache(getId(entity), entity));
+        // Changes still waiting to be written were made against storage that has since been replaced
+        pendingRecords = new ArrayList<>();
+    }
+
+    /**
+     * Group commit: block until the change with the given sequence number is written. Whoever
+     * takes the commit lock hands every change queued so far to the storage engine in one batch,
+     * so writers that arrive while a write is in flight are acknowledged together by the next one.
+     */
+    private void commit(long sequence) {
+        StorageMetrics.lock(commitLock, metrics.commitLockWait);
+        try {
+            if (committedSequence >= sequence) {
+                return;
+            }
+            if (groupCommitWindowMs > 0) {
+                try {
+                    Thread.sleep(groupCommitWindowMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            flushPendingRecords();
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    // Callers must hold the commit lock
+    private void flushPendingRecords() {
+        List<StorageEngine.Change<T>> batch;
+        long target;
+        StorageMetrics.lock(cacheLock.writeLock(), metrics.cacheLockWait);
+        try {
+            batch = pendingRecords;
+            pendingRecords = new ArrayList<>();
+            target = enqueuedSequence;
+        } finally {
+            cacheLock.writeLock().unlock();
+        }
+        try {
+            engine.batch(batch);
+        } catch (RuntimeException e) {
+            // Put the batch back so the next commit retries it ahead of newer changes
+            cacheLock.writeLock().lock();
+            try {
+                batch.addAll(pendingRecords);
+                pendingRecords = batch;
+            } finally {
+                cacheLock.writeLock().unlock();
+            }
+            throw e;
+        }
+        committedSequence = target;
+    }
+
+    /**
+     * Flush every file and directory written since the last run; only does work under the group fsync policy
+     */
+    @Scheduled(fixedDelayString = "${spring.application.fsyncIntervalMs:50}")
+    public void syncPending() {
+        engine.syncPending();
+    }
 }
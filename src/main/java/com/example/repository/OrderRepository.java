@@ -4,13 +4,20 @@ import com.example.model.Order;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 @Repository
 @SuppressWarnings("rawtypes")
 public class OrderRepository extends MainRepository<Order> {
     @Value("${spring.application.orderDataPath}")
     private String orderDataPath;
+    // userId -> orders; users keep only their order IDs, so this is the lookup from a user to their orders
+    private final SecondaryIndex<Order, UUID> ordersByUserId = addIndex(Order::getUserId);
+
     @Override
     protected String getDataPath() {
         return orderDataPath;
@@ -21,32 +28,79 @@ public class OrderRepository extends MainRepository<Order> {
         return Order[].class;
     }
 
+    @Override
+    protected UUID getId(Order order) {
+        return order.getId();
+    }
+
     public OrderRepository() {
+        addSortedIndex("totalPrice", Double.class, Order::getTotalPrice);
     }
 
     public void addOrder(Order newOrder) {
+        if (newOrder.getId() == null) {
+            newOrder.setId(UUID.randomUUID());
+        }
         save(newOrder);
     }
 
+    public void addOrders(List<Order> orders) {
+        for (Order order : orders) {
+            if (order.getId() == null) {
+                order.setId(UUID.randomUUID());
+            }
+        }
+        if (!orders.isEmpty()) {
+            saveBatch(orders);
+        }
+    }
+
     public void deleteOrderById(UUID orderId) {
-        ArrayList<Order> orders = getOrders();
-        Order orderToDelete = orders.stream()
-                .filter(order -> order.getId().equals(orderId))
-                .findFirst()
-                .orElseThrow(() -> new IllegalArgumentException("Order with ID " + orderId + " not found"));
-        orders.remove(orderToDelete);
-        saveAll(orders);
+        if (!deleteById(orderId)) {
+            throw new IllegalArgumentException("Order with ID " + orderId + " not found");
+        }
     }
 
     public ArrayList<Order> getOrders() {
         return findAll();
     }
 
+    public Stream<Order> streamOrders() {
+        return streamAll();
+    }
+
+    // Sorted by "id" or "totalPrice", optionally narrowed to one user's orders (found through ordersByUserId
+    // rather than a walk of the whole sort) and a total price range
+    public Page<Order> getOrdersPage(UUID userId, Double minPrice, Double maxPrice, PageQuery query) {
+        Predicate<Order> filter = order -> (userId == null || userId.equals(order.getUserId()))
+                && (minPrice == null || order.getTotalPrice() >= minPrice)
+                && (maxPrice == null || order.getTotalPrice() <= maxPrice);
+        Map<String, SortedIndex.KeyRange<?>> ranges = Map.of("totalPrice", SortedIndex.KeyRange.between(minPrice, maxPrice));
+        if (userId != null) {
+            return findPage(query, filter, ranges, ordersByUserId, userId);
+        }
+        return findPage(query, filter, ranges);
+    }
+
     public Order getOrderById(UUID orderId) {
-        ArrayList<Order> orders = getOrders();
-        return orders.stream()
-                .filter(order -> order.getId().equals(orderId))
-                .findFirst()
-                .orElse(null);
+        return findById(orderId);
+    }
+
+    public List<Order> getOrdersByUserId(UUID userId) {
+        return findByIndex(ordersByUserId, userId);
+    }
+
+    /**
+     * The orders with the given IDs in the order given, skipping any that no longer exist
+     */
+    public List<Order> getOrdersByIds(List<UUID> orderIds) {
+        List<Order> orders = new ArrayList<>();
+        for (UUID orderId : orderIds) {
+            Order order = findById(orderId);
+            if (order != null) {
+                orders.add(order);
+            }
+        }
+        return orders;
     }
 }
\ No newline at end of file
@@ -0,0 +1,11 @@
+package com.example.repository;
+
+import java.util.stream.Stream;
+
+/**
+ * One page of a collection query, whose items are read once, as the page is written out. nextCursor
+ * resumes the query after the last item, and is null once the page came back short or the query was
+ * not paginated
+ */
+public record Page<T>(Stream<T> items, String nextCursor) {
+}
@@ -0,0 +1,32 @@
+package com.example.repository;
+
+/**
+ * Sort order and keyset position for a collection query. A query without a sort, cursor or limit
+ * returns every match in file order; anything else walks the named sorted index ("id" by default)
+ */
+public record PageQuery(String sort, boolean descending, String cursor, Integer limit) {
+
+    public PageQuery {
+        if (limit != null && limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+    }
+
+    /**
+     * Build a query from request parameters, where order is "asc" or "desc"
+     */
+    public static PageQuery of(String sort, String order, String cursor, Integer limit) {
+        if (order != null && !order.equalsIgnoreCase("asc") && !order.equalsIgnoreCase("desc")) {
+            throw new IllegalArgumentException("order must be asc or desc");
+        }
+        return new PageQuery(sort, "desc".equalsIgnoreCase(order), cursor, limit);
+    }
+
+    public static PageQuery unpaged() {
+        return new PageQuery(null, false, null, null);
+    }
+
+    public boolean isUnpaged() {
+        return sort == null && !descending && cursor == null && limit == null;
+    }
+}
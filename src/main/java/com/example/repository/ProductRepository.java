@@ -1,10 +1,14 @@
 package com.example.repository;
 
+import com.example.model.LineItem;
 import com.example.model.Product;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 @SuppressWarnings("rawtypes")
@@ -21,8 +25,14 @@ public class ProductRepository extends MainRepository<Product> {
         return Product[].class;
     }
 
+    @Override
+    protected UUID getId(Product product) {
+        return product.getId();
+    }
+
     public ProductRepository() {
-        // Default constructor
+        addSortedIndex("name", String.class, Product::getName);
+        addSortedIndex("price", Double.class, Product::getPrice);
     }
     
     /**
@@ -32,12 +42,41 @@ public class ProductRepository extends MainRepository<Product> {
         if (product.getId() == null) {
             product.setId(UUID.randomUUID());
         }
-        ArrayList<Product> products = getProducts();
-        products.add(product);
-        saveAll(products);
+        save(product);
         return product;
     }
 
+    /**
+     * Add or replace many products with a single write to the products JSON file
+     */
+    public void addProducts(List<Product> products) {
+        for (Product product : products) {
+            if (product.getId() == null) {
+                product.setId(UUID.randomUUID());
+            }
+        }
+        if (!products.isEmpty()) {
+            saveBatch(products);
+        }
+    }
+
+    /**
+     * Resolve line items against the catalog: one product per unit, carrying the product's current name
+     * but the unit price captured on the line. A product deleted since it was added comes back as a bare
+     * reference with no name
+     */
+    public List<Product> resolveItems(List<LineItem> items) {
+        List<Product> products = new ArrayList<>();
+        for (LineItem item : items) {
+            Product current = findById(item.getProductId());
+            String name = current != null ? current.getName() : null;
+            for (int i = 0; i < item.getQuantity(); i++) {
+                products.add(new Product(item.getProductId(), name, item.getUnitPrice()));
+            }
+        }
+        return products;
+    }
+
     /**
      * Get all products from the JSON file
      */
@@ -45,60 +84,65 @@ public class ProductRepository extends MainRepository<Product> {
         return findAll();
     }
 
+    /**
+     * Stream all products without copying them into a list
+     */
+    public Stream<Product> streamProducts() {
+        return streamAll();
+    }
+
+    /**
+     * Get one page of the products within a price range and/or whose name starts with a prefix,
+     * sorted by "id", "name" or "price"
+     */
+    public Page<Product> getProductsPage(Double minPrice, Double maxPrice, String namePrefix, PageQuery query) {
+        return findPage(query, product -> (minPrice == null || product.getPrice() >= minPrice)
+                && (maxPrice == null || product.getPrice() <= maxPrice)
+                && (namePrefix == null || (product.getName() != null && product.getName().startsWith(namePrefix))),
+                Map.of("price", SortedIndex.KeyRange.between(minPrice, maxPrice),
+                        "name", SortedIndex.KeyRange.prefix(namePrefix)));
+    }
+
     /**
      * Get a specific product by ID
      */
     public Product getProductById(UUID productId) {
-        ArrayList<Product> products = getProducts();
-        return products.stream()
-                .filter(product -> product.getId().equals(productId))
-                .findFirst()
-                .orElse(null);
+        return findById(productId);
     }
 
     /**
      * Update a product with new name and price
      */
     public Product updateProduct(UUID productId, String newName, double newPrice) {
-        ArrayList<Product> products = getProducts();
-        for (Product product : products) {
-            if (product.getId().equals(productId)) {
-                product.setName(newName);
-                product.setPrice(newPrice);
-                saveAll(products);
-                return product;
-            }
-        }
-        return null; // Product not found
+        return update(productId, product -> {
+            product.setName(newName);
+            product.setPrice(newPrice);
+        }); // null if the product was not found
+    }
+
+    /**
+     * Update a product with new name and price only if it is still at the expected version
+     */
+    public Product updateProduct(UUID productId, String newName, double newPrice, long expectedVersion) {
+        return updateIfVersion(productId, expectedVersion, product -> {
+            product.setName(newName);
+            product.setPrice(newPrice);
+        });
     }
 
     /**
      * Apply discount to specified products
      */
     public void applyDiscount(double discount, ArrayList<UUID> productIds) {
-        ArrayList<Product> products = getProducts();
-        boolean updated = false;
-        
-        for (Product product : products) {
-            if (productIds.contains(product.getId())) {
-                // Apply discount (e.g., 60 means 60% discount, so multiply by 0.4)
-                double discountFactor = 1 - (discount / 100.0);
-                product.setPrice(product.getPrice() * discountFactor);
-                updated = true;
-            }
-        }
-        
-        if (updated) {
-            saveAll(products);
-        }
+        // Apply discount (e.g., 60 means 60% discount, so multiply by 0.4)
+        double discountFactor = 1 - (discount / 100.0);
+        updateAll(productIds, product -> product.setPrice(product.getPrice() * discountFactor));
     }
 
     /**
      * Delete a product by ID
      */
     public void deleteProductById(UUID productId) {
-        ArrayList<Product> products = getProducts();
-        products.removeIf(product -> product.getId().equals(productId));
-        saveAll(products);
+        deleteById(productId);
     }
 }
\ No newline at end of file
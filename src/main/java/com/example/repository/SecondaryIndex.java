@@ -0,0 +1,58 @@
+package com.example.repository;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Entity IDs grouped by a key derived from the entity (e.g. the owning user's ID).
+ * Maintained by MainRepository under its cache lock on every insert, replace and delete.
+ */
+class SecondaryIndex<T, K> implements CacheIndex<T> {
+    private final Function<T, K> keyExtractor;
+    private final Map<K, Set<UUID>> idsByKey = new HashMap<>();
+    // Key each entity was indexed under, so an entity mutated in place can still be unindexed
+    private final Map<UUID, K> keyById = new HashMap<>();
+
+    SecondaryIndex(Function<T, K> keyExtractor) {
+        this.keyExtractor = keyExtractor;
+    }
+
+    @Override
+    public void put(UUID id, T entity) {
+        remove(id);
+        K key = keyExtractor.apply(entity);
+        if (key == null) {
+            return;
+        }
+        keyById.put(id, key);
+        idsByKey.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(id);
+    }
+
+    @Override
+    public void remove(UUID id) {
+        K key = keyById.remove(id);
+        if (key == null) {
+            return;
+        }
+        Set<UUID> ids = idsByKey.get(key);
+        ids.remove(id);
+        if (ids.isEmpty()) {
+            idsByKey.remove(key);
+        }
+    }
+
+    @Override
+    public void clear() {
+        idsByKey.clear();
+        keyById.clear();
+    }
+
+    Set<UUID> get(K key) {
+        return idsByKey.getOrDefault(key, Collections.emptySet());
+    }
+}
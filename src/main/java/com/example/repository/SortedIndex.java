@@ -0,0 +1,183 @@
+package com.example.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Entities ordered by a key derived from the entity, with the ID breaking ties so every entity has a
+ * distinct position. A page seeks straight to the position after its cursor instead of skipping an offset,
+ * and when the query limits the key to a range it seeks to the start of the range and stops at its end.
+ * Maintained by MainRepository under its cache lock on every insert, replace and delete.
+ */
+class SortedIndex<T, K extends Comparable<? super K>> implements CacheIndex<T> {
+
+    /**
+     * Where an entity sits in the index, and what a cursor resumes after
+     */
+    record Position<K>(K key, UUID id) {
+    }
+
+    /**
+     * The keys a query can match: from is inclusive, to inclusive or exclusive, and a null bound is open.
+     * The range only narrows where a page looks; the query's filter still decides what matches
+     */
+    record KeyRange<K>(K from, K to, boolean toInclusive) {
+
+        static <K> KeyRange<K> between(K from, K to) {
+            return new KeyRange<>(from, to, true);
+        }
+
+        /**
+         * Strings starting with the prefix, which sort from the prefix up to (not including) the first
+         * string after all of them
+         */
+        static KeyRange<String> prefix(String prefix) {
+            if (prefix == null) {
+                return new KeyRange<>(null, null, false);
+            }
+            // Bump the last character that can be bumped; a prefix of nothing but \uffff has no end
+            for (int i = prefix.length() - 1; i >= 0; i--) {
+                char c = prefix.charAt(i);
+                if (c != Character.MAX_VALUE) {
+                    return new KeyRange<>(prefix, prefix.substring(0, i) + (char) (c + 1), false);
+                }
+            }
+            return new KeyRange<>(prefix, null, false);
+        }
+    }
+
+    // Tie-breaking IDs that sort before and after every real ID with the same key
+    private static final UUID FIRST_ID = new UUID(Long.MIN_VALUE, Long.MIN_VALUE);
+    private static final UUID LAST_ID = new UUID(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    private final String name;
+    private final Class<K> keyType;
+    private final Function<T, K> keyExtractor;
+    private final NavigableMap<Position<K>, T> entities;
+    // Key each entity was indexed under, so an entity mutated in place can still be unindexed
+    private final Map<UUID, Position<K>> positionById = new HashMap<>();
+
+    SortedIndex(String name, Class<K> keyType, Function<T, K> keyExtractor) {
+        this.name = name;
+        this.keyType = keyType;
+        this.keyExtractor = keyExtractor;
+        Comparator<K> keyOrder = Comparator.nullsFirst(Comparator.naturalOrder());
+        this.entities = new TreeMap<>(Comparator.comparing((Position<K> position) -> position.key(), keyOrder)
+                .thenComparing(Position::id));
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Class<K> getKeyType() {
+        return keyType;
+    }
+
+    Position<K> positionOf(UUID id) {
+        return positionById.get(id);
+    }
+
+    @Override
+    public void put(UUID id, T entity) {
+        remove(id);
+        Position<K> position = new Position<>(keyExtractor.apply(entity), id);
+        positionById.put(id, position);
+        entities.put(position, entity);
+    }
+
+    @Override
+    public void remove(UUID id) {
+        Position<K> position = positionById.remove(id);
+        if (position != null) {
+            entities.remove(position);
+        }
+    }
+
+    @Override
+    public void clear() {
+        entities.clear();
+        positionById.clear();
+    }
+
+    /**
+     * Up to limit matching entities strictly after the given position (or from the start if it is null),
+     * walking the index forwards or backwards over only the keys in range (all of them if it is null)
+     */
+    List<T> page(Position<K> after, boolean descending, Integer limit, Predicate<T> filter, KeyRange<K> range) {
+        return page(entities, after, descending, limit, filter, range);
+    }
+
+    /**
+     * As above, over only the entities with the given IDs, for a query already narrowed to a few of them
+     * (e.g. by a secondary index); costs a sort of those entities rather than a walk of the whole index
+     */
+    List<T> page(Collection<UUID> ids, Position<K> after, boolean descending, Integer limit, Predicate<T> filter,
+                 KeyRange<K> range) {
+        NavigableMap<Position<K>, T> subset = new TreeMap<>(entities.comparator());
+        for (UUID id : ids) {
+            Position<K> position = positionById.get(id);
+            if (position != null) {
+                subset.put(position, entities.get(position));
+            }
+        }
+        return page(subset, after, descending, limit, filter, range);
+    }
+
+    private List<T> page(NavigableMap<Position<K>, T> entities, Position<K> after, boolean descending, Integer limit,
+                         Predicate<T> filter, KeyRange<K> range) {
+        // Bounds in ascending order; the cursor tightens whichever end the walk starts from
+        Position<K> low = null;
+        boolean lowInclusive = true;
+        Position<K> high = null;
+        boolean highInclusive = true;
+        if (range != null && range.from() != null) {
+            low = new Position<>(range.from(), FIRST_ID);
+        }
+        if (range != null && range.to() != null) {
+            high = new Position<>(range.to(), range.toInclusive() ? LAST_ID : FIRST_ID);
+            highInclusive = range.toInclusive();
+        }
+        Comparator<? super Position<K>> order = entities.comparator();
+        if (after != null && !descending && (low == null || order.compare(after, low) >= 0)) {
+            low = after;
+            lowInclusive = false;
+        } else if (after != null && descending && (high == null || order.compare(after, high) <= 0)) {
+            high = after;
+            highInclusive = false;
+        }
+        if (low != null && high != null && order.compare(low, high) > 0) {
+            return List.of();
+        }
+        NavigableMap<Position<K>, T> view = entities;
+        if (low != null && high != null) {
+            view = view.subMap(low, lowInclusive, high, highInclusive);
+        } else if (low != null) {
+            view = view.tailMap(low, lowInclusive);
+        } else if (high != null) {
+            view = view.headMap(high, highInclusive);
+        }
+        if (descending) {
+            view = view.descendingMap();
+        }
+        List<T> page = new ArrayList<>();
+        for (T entity : view.values()) {
+            if (limit != null && page.size() == limit) {
+                break;
+            }
+            if (filter.test(entity)) {
+                page.add(entity);
+            }
+        }
+        return page;
+    }
+}
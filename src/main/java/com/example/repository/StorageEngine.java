@@ -0,0 +1,106 @@
+package com.example.repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Durable storage under a repository's cache. The repository serves every read from its cache and indexes,
+ * loads them with scan, and hands each group-committed batch of changes to batch; an engine only has to keep
+ * the stored entities and give them back. Writes are serialized by the repository's commit lock, so an engine
+ * sees one write at a time, though scans and compactions may run alongside them.
+ *
+ * Engines are picked per repository by spring.application.storageEngine: "json" keeps one JSON array per
+ * data file (plus an append-only log in log persistence mode), "memory" keeps nothing beyond the process.
+ */
+public interface StorageEngine<T> {
+
+    /**
+     * A change to one entity: its new state, or its deletion when entity is null
+     */
+    record Change<T>(UUID id, T entity) {
+    }
+
+    /**
+     * Read every stored entity from storage, in storage order
+     */
+    void scan(Consumer<T> consumer);
+
+    /**
+     * The stored entity with the given ID, or null
+     */
+    T get(UUID id);
+
+    default void put(UUID id, T entity) {
+        batch(List.of(new Change<>(id, entity)));
+    }
+
+    default void delete(UUID id) {
+        batch(List.of(new Change<>(id, null)));
+    }
+
+    /**
+     * Store several changes in order, as a single write where the engine can
+     */
+    void batch(List<Change<T>> changes);
+
+    /**
+     * Replace everything stored with the given entities
+     */
+    void replaceAll(Collection<T> entities);
+
+    /**
+     * False once storage was changed by something other than this engine, so the repository should scan it again
+     */
+    default boolean isCurrent() {
+        return true;
+    }
+
+    /**
+     * Force everything written so far to disk, whatever the engine's fsync policy short of "none"
+     */
+    default void sync() {
+    }
+
+    /**
+     * Force writes deferred by a "group" fsync policy to disk; run periodically
+     */
+    default void syncPending() {
+    }
+
+    /**
+     * Whether changes are appended to a log that compact folds away
+     */
+    default boolean isLogStructured() {
+        return false;
+    }
+
+    /**
+     * Fold the log into a fresh copy of the stored entities, returning false if nothing was compacted
+     */
+    default boolean compact() {
+        return false;
+    }
+
+    /**
+     * Bytes in the log waiting to be compacted
+     */
+    default long getLogSize() {
+        return 0;
+    }
+
+    /**
+     * Records in the log waiting to be compacted
+     */
+    default long getLogRecordCount() {
+        return 0;
+    }
+
+    /**
+     * When the stored entities were last written out whole
+     */
+    default long getLastSnapshotMillis() {
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.repository;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+/**
+ * Meters for the file I/O and lock waits of one repository or of the journal, tagged with its name.
+ * Until a registry is injected the meters come from an empty composite registry and record nothing
+ */
+final class StorageMetrics {
+
+    final Timer read;
+    final Counter bytesRead;
+    final Timer snapshotWrite;
+    final Timer logWrite;
+    final Counter bytesWritten;
+    final Timer fsync;
+    final Timer entityLockWait;
+    final Timer commitLockWait;
+    final Timer cacheLockWait;
+
+    StorageMetrics(String name) {
+        this(new CompositeMeterRegistry(), name);
+    }
+
+    StorageMetrics(MeterRegistry registry, String name) {
+        read = Timer.builder("repository.read")
+                .description("Reading and parsing the data file and its log into the cache")
+                .tag("repository", name)
+                .register(registry);
+        bytesRead = Counter.builder("repository.bytes.read")
+                .baseUnit("bytes")
+                .tag("repository", name)
+                .register(registry);
+        snapshotWrite = Timer.builder("repository.write")
+                .description("Serializing and writing a whole data file, or appending to a log or journal")
+                .tag("repository", name)
+                .tag("kind", "snapshot")
+                .register(registry);
+        logWrite = Timer.builder("repository.write")
+                .description("Serializing and writing a whole data file, or appending to a log or journal")
+                .tag("repository", name)
+                .tag("kind", "log")
+                .register(registry);
+        bytesWritten = Counter.builder("repository.bytes.written")
+                .baseUnit("bytes")
+                .tag("repository", name)
+                .register(registry);
+        fsync = Timer.builder("repository.fsync")
+                .description("Forcing written files and directories to disk")
+                .tag("repository", name)
+                .register(registry);
+        entityLockWait = lockWait(registry, name, "entity");
+        commitLockWait = lockWait(registry, name, "commit");
+        cacheLockWait = lockWait(registry, name, "cache");
+    }
+
+    private static Timer lockWait(MeterRegistry registry, String name, String lock) {
+        return Timer.builder("repository.lock.wait")
+                .description("Time spent waiting to acquire a lock")
+                .tag("repository", name)
+                .tag("lock", lock)
+                .register(registry);
+    }
+
+    /**
+     * Acquire the lock, recording how long that took
+     */
+    static void lock(Lock lock, Timer waitTimer) {
+        long start = System.nanoTime();
+        lock.lock();
+        record(waitTimer, start);
+    }
+
+    /**
+     * Record the time since start, a System.nanoTime() reading
+     */
+    static void record(Timer timer, long start) {
+        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+}
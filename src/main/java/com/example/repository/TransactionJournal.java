@@ -0,0 +1,205 @@
+package com.example.repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.example.model.Versioned;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.util.JsonRecyclerPools;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Write-ahead journal shared by the repositories for changes made in a {@link UnitOfWork}. Each unit
+ * of work is appended as a single line holding all of its changes, so it is durable as a whole after
+ * one write and one fsync, however many repositories it touched. The repositories' own files are
+ * brought up to date later; a checkpoint flushes them and then empties the journal, and a repository
+ * loading at startup replays whatever the journal still holds for it.
+ */
+@Component
+public class TransactionJournal {
+
+    private final ObjectMapper objectMapper = new ObjectMapper(JsonFactory.builder()
+            .recyclerPool(JsonRecyclerPools.sharedConcurrentDequePool())
+            .build());
+
+    @Value("${spring.application.journalPath}")
+    private String journalPath;
+
+    // Same policy as the repositories: anything but "none" fsyncs each record before the unit of work is applied
+    @Value("${spring.application.fsyncPolicy:always}")
+    private String fsyncPolicy = "always";
+
+    private final List<MainRepository<?>> repositories = new CopyOnWriteArrayList<>();
+    // Units of work hold the read lock from their append until they are applied; a checkpoint takes the write lock
+    private final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private StorageMetrics metrics = new StorageMetrics(getClass().getSimpleName());
+
+    @Autowired(required = false)
+    public void setMeterRegistry(MeterRegistry registry) {
+        metrics = new StorageMetrics(registry, getClass().getSimpleName());
+    }
+
+    /**
+     * Cut off a torn record left at the end of the journal by a crash, so records appended from now on
+     * are not hidden behind it when the journal is next replayed
+     */
+    @PostConstruct
+    public void repair() {
+        File journal = new File(journalPath);
+        if (!journal.exists()) {
+            return;
+        }
+        long validLength = 0;
+        try (MappingIterator<JsonNode> records = objectMapper.readerFor(JsonNode.class).readValues(journal)) {
+            while (records.hasNextValue()) {
+                records.nextValue();
+                validLength = records.getParser().currentLocation().getByteOffset();
+            }
+            return;
+        } catch (IOException | RuntimeException e) {
+            // Torn tail, cut below
+        }
+        try (RandomAccessFile file = new RandomAccessFile(journal, "rw")) {
+            file.setLength(validLength);
+            if (validLength > 0) {
+                file.seek(validLength);
+                file.write('\n');
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to repair transaction journal", e);
+        }
+    }
+
+    void register(MainRepository<?> repository) {
+        repositories.add(repository);
+    }
+
+    /**
+     * Append the unit of work's changes as one record, then apply them; a checkpoint can't run in between
+     */
+    void commit(Map<MainRepository<?>, Map<UUID, UnitOfWork.Staged>> changes, Runnable apply) {
+        List<Change> record = new ArrayList<>();
+        changes.forEach((repository, staged) -> staged.forEach((id, change) -> record.add(change.entity() == null
+                ? new Change(repository.getDataPath(), "DELETE", id, change.baseVersion(), null)
+                : new Change(repository.getDataPath(), "PUT", id, ((Versioned) change.entity()).getVersion(), change.entity()))));
+        checkpointLock.readLock().lock();
+        try {
+            append(record);
+            apply.run();
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Flush every repository's pending changes to its own files and sync them, then empty the journal.
+     * Runs on the scheduler thread and once more on shutdown
+     */
+    @Scheduled(fixedDelayString = "${spring.application.journal.checkpointIntervalMs:1000}")
+    @PreDestroy
+    public void checkpoint() {
+        if (!new File(journalPath).exists()) {
+            return;
+        }
+        checkpointLock.writeLock().lock();
+        try {
+            for (MainRepository<?> repository : repositories) {
+                repository.flushDurably();
+            }
+            Files.deleteIfExists(Path.of(journalPath));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to truncate transaction journal", e);
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Hand the repository every journaled change to its data file, oldest first. A torn record left by
+     * a crash mid-append was never acknowledged, so it and anything after it are ignored
+     */
+    void replay(MainRepository<?> repository) {
+        File journal = new File(journalPath);
+        if (!journal.exists()) {
+            return;
+        }
+        try (MappingIterator<JsonNode> records = objectMapper.readerFor(JsonNode.class).readValues(journal)) {
+            while (records.hasNextValue()) {
+                for (JsonNode change : records.nextValue().get("changes")) {
+                    if (repository.getDataPath().equals(change.get("path").asText())) {
+                        repository.replayJournalChange(change.get("op").asText(),
+                                UUID.fromString(change.get("id").asText()),
+                                change.get("version").asLong(), change.get("entity"));
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Stop at a torn tail; repair has cut it off unless the journal was written to meanwhile
+        }
+    }
+
+    private void append(List<Change> record) {
+        StorageMetrics.lock(appendLock, metrics.commitLockWait);
+        long start = System.nanoTime();
+        try (FileChannel journal = FileChannel.open(Path.of(journalPath), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            byte[] line = (objectMapper.writeValueAsString(new Record(record)) + "\n").getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining()) {
+                journal.write(buffer);
+            }
+            metrics.bytesWritten.increment(line.length);
+            if (!"none".equalsIgnoreCase(fsyncPolicy)) {
+                long syncStart = System.nanoTime();
+                journal.force(false);
+                StorageMetrics.record(metrics.fsync, syncStart);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to append to transaction journal", e);
+        } finally {
+            StorageMetrics.record(metrics.logWrite, start);
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * One line of the journal: every change a unit of work committed
+     */
+    private record Record(List<Change> changes) {
+    }
+
+    /**
+     * One change in a journal record: the repository's data file, and the entity's new state at its
+     * new version, or its deletion at the version it was deleted from
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private record Change(String path, String op, UUID id, Long version, Object entity) {
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.repository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Groups writes to several repositories so they are committed together. While work runs inside
+ * {@link #run}, saves, updates and deletes on any repository are staged on the calling thread
+ * instead of being applied; lookups by ID on that thread see the staged entities, other reads
+ * and other threads don't. When the work returns, every staged change is checked against the
+ * version it was based on, recorded in the transaction journal as one record, and only then
+ * applied to the repositories, whose own files catch up at their next write or journal checkpoint.
+ * If the work throws, nothing it staged is applied.
+ */
+public final class UnitOfWork {
+
+    private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+
+    // Staged changes per repository, keyed by entity ID; a repository's first change decides its place in the journal record
+    private final Map<MainRepository<?>, Map<UUID, Staged>> changes = new LinkedHashMap<>();
+
+    private UnitOfWork() {
+    }
+
+    /**
+     * Run the work as one unit of work and commit what it staged. Called from inside another unit
+     * of work, the work simply joins the outer one. Throws OptimisticLockingFailureException, and
+     * applies nothing, if another request changed one of the staged entities first
+     */
+    public static void run(Runnable work) {
+        if (CURRENT.get() != null) {
+            work.run();
+            return;
+        }
+        UnitOfWork unit = new UnitOfWork();
+        CURRENT.set(unit);
+        try {
+            work.run();
+        } finally {
+            CURRENT.remove();
+        }
+        unit.commit();
+    }
+
+    static UnitOfWork current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * A staged change: the entity's new state, or null for a deletion, and the version of the stored
+     * entity it was based on, or null if there was none
+     */
+    record Staged(Object entity, Long baseVersion) {
+    }
+
+    Staged get(MainRepository<?> repository, UUID id) {
+        Map<UUID, Staged> staged = changes.get(repository);
+        return staged == null ? null : staged.get(id);
+    }
+
+    // A later change to the same entity replaces the earlier one but keeps the version the first was based on
+    void stage(MainRepository<?> repository, UUID id, Object entity, Long storedVersion) {
+        Map<UUID, Staged> staged = changes.computeIfAbsent(repository, r -> new LinkedHashMap<>());
+        Staged previous = staged.get(id);
+        if (entity == null && previous != null && previous.baseVersion() == null) {
+            // Created and deleted again within the unit of work, so there is nothing to commit
+            staged.remove(id);
+            return;
+        }
+        staged.put(id, new Staged(entity, previous != null ? previous.baseVersion() : storedVersion));
+    }
+
+    private void commit() {
+        if (changes.isEmpty()) {
+            return;
+        }
+        // Lock every staged entity, repository by repository in a fixed order, so two units of work can't deadlock
+        List<MainRepository<?>> repositories = new ArrayList<>(changes.keySet());
+        repositories.sort(Comparator.comparing(MainRepository::getDataPath));
+        TransactionJournal journal = repositories.get(0).getJournal();
+        List<List<ReentrantLock>> locks = new ArrayList<>();
+        Map<MainRepository<?>, Long> sequences = new LinkedHashMap<>();
+        try {
+            for (MainRepository<?> repository : repositories) {
+                locks.add(repository.lockStaged(changes.get(repository).keySet()));
+            }
+            for (MainRepository<?> repository : repositories) {
+                repository.checkStaged(changes.get(repository));
+            }
+            if (journal != null) {
+                journal.commit(changes, () -> changes.forEach(MainRepository::applyStaged));
+                return;
+            }
+            // Without a journal (a repository used on its own) each repository writes its share itself
+            for (MainRepository<?> repository : repositories) {
+                sequences.put(repository, repository.applyStaged(changes.get(repository)));
+            }
+        } finally {
+            for (int i = 0; i < locks.size(); i++) {
+                repositories.get(i).unlockStaged(locks.get(i));
+            }
+        }
+        sequences.forEach(MainRepository::commitStaged);
+    }
+}
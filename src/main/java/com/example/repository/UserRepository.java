@@ -2,11 +2,14 @@ package com.example.repository;
 
 import com.example.model.Order;
 import com.example.model.User;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 @SuppressWarnings("rawtypes")
@@ -23,61 +26,111 @@ public class UserRepository extends MainRepository<User> {
         return User[].class;
     }
 
+    @Override
+    protected UUID getId(User user) {
+        return user.getId();
+    }
+
+    // Where the orders a user's order IDs refer to are kept
+    private OrderRepository orderRepository;
+
+    public UserRepository() {
+        addSortedIndex("name", String.class, User::getName);
+    }
+
+    @Autowired
+    public void setOrderRepository(OrderRepository orderRepository) {
+        this.orderRepository = orderRepository;
+    }
+
     public ArrayList<User> getUsers() {
         return findAll();
     }
 
+    public Stream<User> streamUsers() {
+        return streamAll();
+    }
+
+    // Sorted by "id" or "name", optionally keeping only names that start with a prefix
+    public Page<User> getUsersPage(String namePrefix, PageQuery query) {
+        return findPage(query, user -> namePrefix == null
+                || (user.getName() != null && user.getName().startsWith(namePrefix)),
+                Map.of("name", SortedIndex.KeyRange.prefix(namePrefix)));
+    }
+
     public User getUserById(UUID userId) {
-        ArrayList<User> users = getUsers();
-        return users.stream()
-                .filter(user -> user.getId().equals(userId))
-                .findFirst()
-                .orElse(null);
+        return findById(userId);
     }
 
     public User addUser(User user) {
         if (user.getId() == null) {
             user.setId(UUID.randomUUID());
         }
-
-        ArrayList<User> users = getUsers();
-        users.add(user);
-        saveAll(users);
+        save(user);
         return user;
     }
 
+    public void addUsers(List<User> users) {
+        for (User user : users) {
+            if (user.getId() == null) {
+                user.setId(UUID.randomUUID());
+            }
+        }
+        if (!users.isEmpty()) {
+            saveBatch(users);
+        }
+    }
+
+    /**
+     * The user's orders resolved through OrderRepository. Orders still embedded by an older users file come
+     * first, as stored in OrderRepository if they are there and as embedded if they never reached it
+     */
     public List<Order> getOrdersByUserId(UUID userId) {
         User user = getUserById(userId);
-        return user != null ? user.getOrders() : new ArrayList<>();
+        if (user == null) {
+            return new ArrayList<>();
+        }
+        List<Order> orders = new ArrayList<>();
+        for (Order embedded : user.getOrders()) {
+            if (!user.getOrderIds().contains(embedded.getId())) {
+                Order stored = orderRepository.getOrderById(embedded.getId());
+                orders.add(stored != null ? stored : embedded);
+            }
+        }
+        orders.addAll(orderRepository.getOrdersByIds(user.getOrderIds()));
+        return orders;
     }
 
     public void addOrderToUser(UUID userId, Order order) {
-        ArrayList<User> users = getUsers();
-        users.stream()
-                .filter(user -> user.getId().equals(userId))
-                .findFirst()
-                .ifPresent(user -> {
-                    user.getOrders().add(order);
-                    saveAll(users);
-                });
+        update(userId, user -> user.getOrderIds().add(order.getId()));
     }
 
     public void removeOrderFromUser(UUID userId, UUID orderId) {
-        ArrayList<User> users = getUsers();
-        users.stream()
-                .filter(user -> user.getId().equals(userId))
-                .findFirst()
-                .ifPresent(user -> {
-                    user.setOrders(user.getOrders().stream()
-                            .filter(order -> !order.getId().equals(orderId))
-                            .collect(java.util.stream.Collectors.toList()));
-                    saveAll(users);
-                });
+        update(userId, user -> {
+            user.getOrderIds().remove(orderId);
+            user.getOrders().removeIf(order -> order.getId().equals(orderId));
+        });
+    }
+
+    /**
+     * Replace the user's embedded orders with their IDs, ahead of the IDs of any orders placed since.
+     * The orders must already be in OrderRepository
+     */
+    public void replaceEmbeddedOrders(UUID userId) {
+        update(userId, user -> {
+            List<UUID> orderIds = new ArrayList<>();
+            for (Order embedded : user.getOrders()) {
+                if (!user.getOrderIds().contains(embedded.getId()) && !orderIds.contains(embedded.getId())) {
+                    orderIds.add(embedded.getId());
+                }
+            }
+            orderIds.addAll(user.getOrderIds());
+            user.setOrderIds(orderIds);
+            user.setOrders(new ArrayList<>());
+        });
     }
 
     public void deleteUserById(UUID userId) {
-        ArrayList<User> users = getUsers();
-        users.removeIf(user -> user.getId().equals(userId));
-        saveAll(users);
+        deleteById(userId);
     }
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package com.example.service;
+
+import java.util.UUID;
+
+/**
+ * One step of a batch cart mutation: "add" puts quantity units of the product with productId into the cart,
+ * "remove" takes that many out. The quantity defaults to one
+ */
+public record CartOperation(String op, UUID productId, Integer quantity) {
+
+    public CartOperation(String op, UUID productId) {
+        this(op, productId, null);
+    }
+
+    public int units() {
+        return quantity != null ? quantity : 1;
+    }
+
+    public boolean isAdd() {
+        return "add".equalsIgnoreCase(op);
+    }
+
+    public boolean isRemove() {
+        return "remove".equalsIgnoreCase(op);
+    }
+}
@@ -1,21 +1,32 @@
 package com.example.service;
 
 import com.example.model.Cart;
+import com.example.model.CartSummary;
 import com.example.model.Product;
 import com.example.repository.CartRepository;
+import com.example.repository.Page;
+import com.example.repository.PageQuery;
+import com.example.repository.ProductRepository;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
+@Timed("service.calls")
 @SuppressWarnings("rawtypes")
 public class CartService {
     private final CartRepository cartRepository;
+    private final ProductRepository productRepository;
 
     @Autowired
-    public CartService(CartRepository cartRepository) {
+    public CartService(CartRepository cartRepository, ProductRepository productRepository) {
         this.cartRepository = cartRepository;
+        this.productRepository = productRepository;
     }
 
     public Cart addCart(Cart cart) {
@@ -29,10 +40,25 @@ public class CartService {
         return cart;
     }
 
+    /**
+     * Add several carts with a single write; every cart must already have an ID and a user
+     */
+    public void addCarts(List<Cart> carts) {
+        cartRepository.addCarts(carts);
+    }
+
     public ArrayList<Cart> getCarts() {
         return cartRepository.getCarts();
     }
 
+    public Stream<Cart> streamCarts() {
+        return cartRepository.streamCarts();
+    }
+
+    public Page<Cart> getCartsPage(UUID userId, PageQuery query) {
+        return cartRepository.getCartsPage(userId, query);
+    }
+
     public Cart getCartById(UUID cartId) {
         return cartRepository.getCartById(cartId);
     }
@@ -45,6 +71,70 @@ public class CartService {
         cartRepository.addProductToCart(cartId, product);
     }
 
+    public Cart addProductToCart(UUID cartId, Product product, long expectedVersion) {
+        return cartRepository.addProductToCart(cartId, product, expectedVersion);
+    }
+
+    /**
+     * Apply a list of add/remove operations to one cart, in order, as a single read-modify-write.
+     * Every operation is checked and every added product looked up before the cart is touched, so a bad
+     * operation leaves the cart unchanged. With an expected version the batch is only applied if the cart
+     * is still at that version. Operations that would take a line or the cart past Integer.MAX_VALUE units are
+     * rejected with IllegalArgumentException. Returns the updated cart, or null if there is no cart with that ID
+     */
+    public Cart applyOperations(UUID cartId, List<CartOperation> operations, Long expectedVersion) {
+        List<Consumer<Cart>> steps = new ArrayList<>();
+        for (int i = 0; i < operations.size(); i++) {
+            CartOperation operation = operations.get(i);
+            if (operation == null || operation.productId() == null) {
+                throw new IllegalArgumentException("Operation " + i + " has no product ID");
+            }
+            int units = operation.units();
+            if (units <= 0) {
+                throw new IllegalArgumentException("Operation " + i + " must have a positive quantity");
+            }
+            if (operation.isAdd()) {
+                Product product = productRepository.getProductById(operation.productId());
+                if (product == null) {
+                    throw new IllegalArgumentException("Product with ID " + operation.productId() + " not found");
+                }
+                steps.add(cart -> cart.addProduct(product, units));
+            } else if (operation.isRemove()) {
+                UUID productId = operation.productId();
+                steps.add(cart -> cart.removeProduct(productId, units));
+            } else {
+                throw new IllegalArgumentException("Operation " + i + " must be add or remove");
+            }
+        }
+        Consumer<Cart> changes = cart -> steps.forEach(step -> step.accept(cart));
+        try {
+            if (expectedVersion == null) {
+                return cartRepository.applyToCart(cartId, changes);
+            }
+            return cartRepository.applyToCart(cartId, changes, expectedVersion);
+        } catch (ArithmeticException e) {
+            // The changes ran on a copy of the cart, so the stored cart is untouched
+            throw new IllegalArgumentException("Operations would put more than " + Integer.MAX_VALUE
+                    + " units in the cart", e);
+        }
+    }
+
+    /**
+     * The cart's running totals, or null if there is no cart with that ID
+     */
+    public CartSummary getCartSummary(UUID cartId) {
+        Cart cart = cartRepository.getCartById(cartId);
+        return cart != null ? CartSummary.of(cart) : null;
+    }
+
+    /**
+     * The cart's products resolved against the catalog, or null if there is no cart with that ID
+     */
+    public List<Product> getCartProducts(UUID cartId) {
+        Cart cart = cartRepository.getCartById(cartId);
+        return cart != null ? productRepository.resolveItems(cart.getItems()) : null;
+    }
+
     public void deleteProductFromCart(UUID cartId, Product product) {
         cartRepository.deleteProductFromCart(cartId, product);
     }
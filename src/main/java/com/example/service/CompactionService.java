@@ -0,0 +1,84 @@
+package com.example.service;
+
+import com.example.repository.MainRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.ClassUtils;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@Service
+@SuppressWarnings("rawtypes")
+public class CompactionService {
+    private final List<MainRepository> repositories;
+
+    // Thresholds past which a repository's log gets folded into its data file
+    @Value("${spring.application.compaction.maxLogBytes:8388608}")
+    private long maxLogBytes = 8 * 1024 * 1024;
+
+    @Value("${spring.application.compaction.maxLogRecords:10000}")
+    private long maxLogRecords = 10_000;
+
+    @Value("${spring.application.compaction.maxLogAgeMs:300000}")
+    private long maxLogAgeMs = 300_000;
+
+    // Records nothing until a registry is injected, like the repositories' own meters
+    private MeterRegistry meterRegistry = new CompositeMeterRegistry();
+
+    @Autowired
+    public CompactionService(List<MainRepository> repositories) {
+        this.repositories = repositories;
+    }
+
+    @Autowired(required = false)
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Periodically compact every log-mode repository whose log has grown past a threshold.
+     * Runs on the scheduler thread, so request threads only ever wait for the brief log rotation
+     * and snapshot swap inside MainRepository.compact
+     */
+    @Scheduled(fixedDelayString = "${spring.application.compaction.intervalMs:10000}")
+    public void compactIfNeeded() {
+        for (MainRepository repository : repositories) {
+            if (repository.isLogMode() && needsCompaction(repository)) {
+                compact(repository);
+            }
+        }
+    }
+
+    /**
+     * Check a repository's log against the size, record count and age thresholds
+     */
+    public boolean needsCompaction(MainRepository repository) {
+        if (repository.getLogSize() == 0) {
+            return false;
+        }
+        return repository.getLogSize() >= maxLogBytes
+                || repository.getLogRecordCount() >= maxLogRecords
+                || System.currentTimeMillis() - repository.getLastSnapshotMillis() >= maxLogAgeMs;
+    }
+
+    /**
+     * Compact a single repository and record how long it took in the repository.compaction timer
+     */
+    public boolean compact(MainRepository repository) {
+        long start = System.nanoTime();
+        boolean compacted = repository.compact();
+        if (compacted) {
+            Timer.builder("repository.compaction")
+                    .description("Folding a repository's log into its data file")
+                    .tag("repository", ClassUtils.getUserClass(repository).getSimpleName())
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return compacted;
+    }
+}
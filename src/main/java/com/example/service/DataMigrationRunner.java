@@ -0,0 +1,42 @@
+package com.example.service;
+
+import com.example.repository.MainRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Service;
+import java.util.List;
+
+@Service
+@SuppressWarnings("rawtypes")
+public class DataMigrationRunner implements ApplicationRunner {
+    private final List<MainRepository> repositories;
+    private final UserService userService;
+
+    // Rewrite every data file in the current format at startup, e.g. once after upgrading from embedded products
+    // or embedded orders
+    @Value("${spring.application.migrateOnStartup:false}")
+    private boolean migrateOnStartup;
+
+    @Autowired
+    public DataMigrationRunner(List<MainRepository> repositories, UserService userService) {
+        this.repositories = repositories;
+        this.userService = userService;
+    }
+
+    /**
+     * Files in an older format are read transparently and converted as they are next written;
+     * this converts them all up front instead
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!migrateOnStartup) {
+            return;
+        }
+        userService.migrateEmbeddedOrders();
+        for (MainRepository repository : repositories) {
+            repository.rewrite();
+        }
+    }
+}
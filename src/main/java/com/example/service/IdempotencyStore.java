@@ -0,0 +1,124 @@
+package com.example.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the outcome of requests made with an idempotency key, so a client retrying one gets the
+ * first attempt's result instead of repeating its side effects. Keys are kept for ttlMs and at most
+ * maxKeys are held, oldest dropped first; a retry that arrives while the first attempt is still
+ * running waits for it, and a key is never dropped while its attempt is running. A failed attempt is
+ * forgotten, so it can be retried with the same key
+ */
+@Component
+public class IdempotencyStore {
+
+    @Value("${spring.application.idempotency.maxKeys:10000}")
+    private int maxKeys = 10_000;
+
+    @Value("${spring.application.idempotency.ttlMs:86400000}")
+    private long ttlMs = 86_400_000;
+
+    // Keys in the order they were first used, which is also the order they expire in
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    // A lock rather than a monitor, so a virtual thread waiting on it never pins its carrier
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The result of an action, and whether it was replayed from an earlier request with the same key
+     */
+    public record Outcome<T>(T value, boolean replayed) {
+    }
+
+    private record Entry(CompletableFuture<Object> result, long createdMillis) {
+    }
+
+    /**
+     * Run the action unless the key has been seen within the TTL, in which case return what the
+     * earlier run returned (or wait for it to finish)
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Outcome<T> execute(String key, Supplier<T> action) {
+        long now = System.currentTimeMillis();
+        Entry entry;
+        boolean first;
+        lock.lock();
+        try {
+            evictExpired(now);
+            entry = entries.get(key);
+            first = entry == null;
+            if (first) {
+                entry = new Entry(new CompletableFuture<>(), now);
+                entries.put(key, entry);
+                evictOldest();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!first) {
+            try {
+                return new Outcome<>((T) entry.result().join(), true);
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        try {
+            T value = action.get();
+            entry.result().complete(value);
+            return new Outcome<>(value, false);
+        } catch (Throwable e) {
+            // Errors too, or the key would stay in flight and every retry would wait on it forever
+            lock.lock();
+            try {
+                entries.remove(key, entry);
+            } finally {
+                lock.unlock();
+            }
+            entry.result().completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Callers must hold the lock. Attempts still running are kept, so a retry can't start a second one
+    private void evictExpired(long now) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.createdMillis() + ttlMs > now) {
+                break;
+            }
+            if (entry.result().isDone()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    // Callers must hold the lock. Skips running attempts like evictExpired, so the store can briefly hold
+    // more than maxKeys when that many are in flight at once
+    private void evictOldest() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > maxKeys && iterator.hasNext()) {
+            if (iterator.next().result().isDone()) {
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Outcome of a bulk import: how many items were persisted and why each rejected item was turned away.
+ * Items are identified by their zero-based position in the request body
+ */
+public class ImportReport {
+
+    public record ItemError(int index, String message) {
+    }
+
+    private int imported;
+    private final List<ItemError> errors = new ArrayList<>();
+
+    public void reject(int index, String message) {
+        errors.add(new ItemError(index, message));
+    }
+
+    public int getImported() {
+        return imported;
+    }
+
+    public void setImported(int imported) {
+        this.imported = imported;
+    }
+
+    public int getRejected() {
+        return errors.size();
+    }
+
+    public List<ItemError> getErrors() {
+        List<ItemError> sorted = new ArrayList<>(errors);
+        sorted.sort(Comparator.comparingInt(ItemError::index));
+        return sorted;
+    }
+}
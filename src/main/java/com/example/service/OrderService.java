@@ -1,20 +1,31 @@
 package com.example.service;
 
 import com.example.model.Order;
+import com.example.model.Product;
 import com.example.repository.OrderRepository;
+import com.example.repository.Page;
+import com.example.repository.PageQuery;
+import com.example.repository.ProductRepository;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Service
+@Timed("service.calls")
 @SuppressWarnings("rawtypes")
 public class OrderService {
     private final OrderRepository orderRepository;
+    private final ProductRepository productRepository;
     
     @Autowired
-    public OrderService(OrderRepository orderRepository) {
+    public OrderService(OrderRepository orderRepository, ProductRepository productRepository) {
         this.orderRepository = orderRepository;
+        this.productRepository = productRepository;
     }
     
     /**
@@ -24,6 +35,26 @@ public class OrderService {
         orderRepository.addOrder(order);
     }
     
+    /**
+     * Validate parsed orders and insert or replace the valid ones with a single batched write,
+     * recording each rejected order in the report by its position in the import
+     */
+    public ImportReport importOrders(Map<Integer, Order> orders, ImportReport report) {
+        List<Order> accepted = new ArrayList<>();
+        orders.forEach((index, order) -> {
+            if (order.getUserId() == null) {
+                report.reject(index, "Order user ID is required");
+            } else if (!(order.getTotalPrice() >= 0)) {
+                report.reject(index, "Order total price must be a non-negative number");
+            } else {
+                accepted.add(order);
+            }
+        });
+        orderRepository.addOrders(accepted);
+        report.setImported(accepted.size());
+        return report;
+    }
+    
     /**
      * Get all orders in the system
      */
@@ -31,6 +62,20 @@ public class OrderService {
         return orderRepository.getOrders();
     }
     
+    /**
+     * Stream all orders in the system without collecting them into a list
+     */
+    public Stream<Order> streamOrders() {
+        return orderRepository.streamOrders();
+    }
+    
+    /**
+     * Get one page of the orders, optionally narrowed to a user and a total price range
+     */
+    public Page<Order> getOrdersPage(UUID userId, Double minPrice, Double maxPrice, PageQuery query) {
+        return orderRepository.getOrdersPage(userId, minPrice, maxPrice, query);
+    }
+    
     /**
      * Get a specific order by its ID
      */
@@ -38,6 +83,21 @@ public class OrderService {
         return orderRepository.getOrderById(orderId);
     }
     
+    /**
+     * Get an order's products resolved against the catalog, or null if there is no order with that ID
+     */
+    public List<Product> getOrderProducts(UUID orderId) {
+        Order order = orderRepository.getOrderById(orderId);
+        return order != null ? productRepository.resolveItems(order.getItems()) : null;
+    }
+    
+    /**
+     * Get all orders placed by a specific user
+     */
+    public List<Order> getOrdersByUserId(UUID userId) {
+        return orderRepository.getOrdersByUserId(userId);
+    }
+    
     /**
      * Delete a specific order by its ID
      */
@@ -2,12 +2,19 @@ package com.example.service;
 
 import com.example.model.Product;
 import com.example.repository.ProductRepository;
+import com.example.repository.Page;
+import com.example.repository.PageQuery;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Service
+@Timed("service.calls")
 @SuppressWarnings("rawtypes")
 public class ProductService {
     private final ProductRepository productRepository;
@@ -22,11 +29,39 @@ public class ProductService {
         return productRepository.addProduct(product);
     }
 
+    /**
+     * Validate parsed products and insert or replace the valid ones with a single batched write,
+     * recording each rejected product in the report by its position in the import
+     */
+    public ImportReport importProducts(Map<Integer, Product> products, ImportReport report) {
+        List<Product> accepted = new ArrayList<>();
+        products.forEach((index, product) -> {
+            if (product.getName() == null || product.getName().isBlank()) {
+                report.reject(index, "Product name is required");
+            } else if (!(product.getPrice() >= 0)) {
+                report.reject(index, "Product price must be a non-negative number");
+            } else {
+                accepted.add(product);
+            }
+        });
+        productRepository.addProducts(accepted);
+        report.setImported(accepted.size());
+        return report;
+    }
+
     public ArrayList<Product> getProducts() {
         // Implementation
         return productRepository.getProducts();
     }
 
+    public Stream<Product> streamProducts() {
+        return productRepository.streamProducts();
+    }
+
+    public Page<Product> getProductsPage(Double minPrice, Double maxPrice, String namePrefix, PageQuery query) {
+        return productRepository.getProductsPage(minPrice, maxPrice, namePrefix, query);
+    }
+
     public Product getProductById(UUID productId) {
         // Implementation
         return productRepository.getProductById(productId);
@@ -39,6 +74,13 @@ public class ProductService {
         return productRepository.updateProduct(productId, newName, newPrice);
     }
 
+    /**
+     * Update a specific product only if it is still at the version the caller last saw
+     */
+    public Product updateProduct(UUID productId, String newName, double newPrice, long expectedVersion) {
+        return productRepository.updateProduct(productId, newName, newPrice, expectedVersion);
+    }
+
     /**
      * Apply the given discount to an array list of products' IDs
      * The discount will be given as decimal number (60 means apply 60% discount)
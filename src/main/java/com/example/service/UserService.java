@@ -1,20 +1,27 @@
 package com.example.service;
 
 import com.example.model.Cart;
+import com.example.model.LineItem;
 import com.example.model.Order;
-import com.example.model.Product;
 import com.example.model.User;
 import com.example.repository.CartRepository;
 import com.example.repository.OrderRepository;
+import com.example.repository.Page;
+import com.example.repository.PageQuery;
 import com.example.repository.ProductRepository;
+import com.example.repository.UnitOfWork;
 import com.example.repository.UserRepository;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Service
+@Timed("service.calls")
 @SuppressWarnings("rawtypes")
 public class UserService {
     // Dependency Injection Variables
@@ -46,16 +53,50 @@ public class UserService {
         Cart userCart = new Cart();
         userCart.setId(UUID.randomUUID());
         userCart.setUserId(user.getId());
-        userCart.setProducts(new ArrayList<>());
+        userCart.setItems(new ArrayList<>());
         cartService.addCart(userCart);
 
         return savedUser;
     }
 
+    /**
+     * Validate parsed users and insert or replace the valid ones with a single batched write.
+     * Users that are new to the system get an empty cart each, written in one more batch, just as addUser does
+     */
+    public ImportReport importUsers(Map<Integer, User> users, ImportReport report) {
+        List<User> accepted = new ArrayList<>();
+        List<Cart> newCarts = new ArrayList<>();
+        users.forEach((index, user) -> {
+            if (user.getName() == null || user.getName().isBlank()) {
+                report.reject(index, "User name is required");
+                return;
+            }
+            if (user.getId() == null) {
+                user.setId(UUID.randomUUID());
+            }
+            if (userRepository.getUserById(user.getId()) == null && cartService.getCartByUserId(user.getId()) == null) {
+                newCarts.add(new Cart(UUID.randomUUID(), user.getId(), new ArrayList<>()));
+            }
+            accepted.add(user);
+        });
+        userRepository.addUsers(accepted);
+        cartService.addCarts(newCarts);
+        report.setImported(accepted.size());
+        return report;
+    }
+
     public ArrayList<User> getUsers() {
         return userRepository.getUsers();
     }
 
+    public Stream<User> streamUsers() {
+        return userRepository.streamUsers();
+    }
+
+    public Page<User> getUsersPage(String namePrefix, PageQuery query) {
+        return userRepository.getUsersPage(namePrefix, query);
+    }
+
     public User getUserById(UUID userId) {
         return userRepository.getUserById(userId);
     }
@@ -64,12 +105,15 @@ public class UserService {
         return userRepository.getOrdersByUserId(userId);
     }
 
-    public void addOrderToUser(UUID userId) {
+    /**
+     * Turn the user's cart into an order and empty the cart, returning the order, or null if the cart was empty
+     */
+    public Order addOrderToUser(UUID userId) {
         // Get the user's cart
         Cart userCart = cartService.getCartByUserId(userId);
 
-        if (userCart == null || userCart.getProducts().isEmpty()) {
-            return; // Nothing to checkout
+        if (userCart == null || userCart.getItems().isEmpty()) {
+            return null; // Nothing to checkout
         }
 
         // Create a new order
@@ -77,39 +121,63 @@ public class UserService {
         newOrder.setId(UUID.randomUUID());
         newOrder.setUserId(userId);
 
-        // Calculate total price and copy products
-        double totalPrice = 0;
-        List<Product> orderProducts = new ArrayList<>();
+        // Copy the cart's lines, keeping the prices captured when products were added; the cart already keeps their total
+        List<LineItem> orderItems = new ArrayList<>();
 
-        for (Product product : userCart.getProducts()) {
-            orderProducts.add(product);
-            totalPrice += product.getPrice();
+        for (LineItem item : userCart.getItems()) {
+            orderItems.add(new LineItem(item.getProductId(), item.getQuantity(), item.getUnitPrice()));
         }
 
-        newOrder.setProducts(orderProducts);
-        newOrder.setTotalPrice(totalPrice);
-
-        // Add order to repository
-        orderRepository.addOrder(newOrder);
+        newOrder.setItems(orderItems);
+        newOrder.setTotalPrice(userCart.getTotalPrice());
 
-        // Add order to user
-        userRepository.addOrderToUser(userId, newOrder);
+        // Save the order, add it to the user and empty the cart as one unit of work, so they are committed together.
+        // The cart is only emptied if it is still the one the order was built from, otherwise nothing is committed
+        UnitOfWork.run(() -> {
+            orderRepository.addOrder(newOrder);
+            userRepository.addOrderToUser(userId, newOrder);
+            cartRepository.applyToCart(userCart.getId(), Cart::clearItems, userCart.getVersion());
+        });
 
-        // Empty the cart
-        emptyCart(userId);
+        return newOrder;
     }
 
     public void emptyCart(UUID userId) {
         Cart userCart = cartService.getCartByUserId(userId);
         if (userCart != null) {
-            userCart.getProducts().clear();
-            cartRepository.addCart(userCart); // Update cart in repository
+            cartRepository.applyToCart(userCart.getId(), Cart::clearItems);
+        }
+    }
+
+    /**
+     * Move orders still embedded in users by an older users file into the order repository, leaving each
+     * user with their order IDs. Each user is migrated in a unit of work of its own, so a user's orders are
+     * never stored without the IDs pointing at them. Returns the number of users migrated
+     */
+    public int migrateEmbeddedOrders() {
+        int migrated = 0;
+        for (User user : userRepository.getUsers()) {
+            if (user.getOrders().isEmpty()) {
+                continue;
+            }
+            UnitOfWork.run(() -> {
+                for (Order order : user.getOrders()) {
+                    if (orderRepository.getOrderById(order.getId()) == null) {
+                        orderRepository.addOrder(order);
+                    }
+                }
+                userRepository.replaceEmbeddedOrders(user.getId());
+            });
+            migrated++;
         }
+        return migrated;
     }
 
     public void removeOrderFromUser(UUID userId, UUID orderId) {
-        userRepository.removeOrderFromUser(userId, orderId);
-        orderRepository.deleteOrderById(orderId);
+        UnitOfWork.run(() -> {
+            userRepository.removeOrderFromUser(userId, orderId);
+            orderRepository.deleteOrderById(orderId);
+        });
     }
 
     public void deleteUserById(UUID userId) {
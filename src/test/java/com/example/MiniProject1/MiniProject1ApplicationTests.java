@@ -94,11 +94,21 @@ class MiniProject1ApplicationTests {
             objectMapper.writeValue(new File(productDataPath), new ArrayList<Product>());
             objectMapper.writeValue(new File(orderDataPath), new ArrayList<Order>());
             objectMapper.writeValue(new File(cartDataPath), new ArrayList<Cart>());
+            refreshRepositories();
         } catch (IOException e) {
             throw new RuntimeException("Failed to write to JSON file", e);
         }
     }
 
+    // The repositories check for outside changes to their files periodically, not on every read, so a test that
+    // writes a data file itself has them pick the change up straight away
+    private void refreshRepositories() {
+        userRepository.refresh();
+        productRepository.refresh();
+        orderRepository.refresh();
+        cartRepository.refresh();
+    }
+
     public Object find(String typeString, Object toFind){
         switch(typeString){
             case "User":
@@ -150,6 +160,7 @@ class MiniProject1ApplicationTests {
            }
            products.add(product);
            objectMapper.writeValue(file, products);
+           productRepository.refresh();
            return product;
        } catch (IOException e) {
            throw new RuntimeException("Failed to write to JSON file", e);
@@ -179,6 +190,7 @@ class MiniProject1ApplicationTests {
            }
            users.add(user);
            objectMapper.writeValue(file, users);
+           userRepository.refresh();
            return user;
        } catch (IOException e) {
            throw new RuntimeException("Failed to write to JSON file", e);
@@ -207,6 +219,7 @@ class MiniProject1ApplicationTests {
               }
               carts.add(cart);
               objectMapper.writeValue(file, carts);
+              cartRepository.refresh();
               return cart;
          } catch (IOException e) {
               throw new RuntimeException("Failed to write to JSON file", e);
@@ -235,6 +248,7 @@ class MiniProject1ApplicationTests {
                   }
                   orders.add(order);
                   objectMapper.writeValue(file, orders);
+                  orderRepository.refresh();
                   return order;
             } catch (IOException e) {
                   throw new RuntimeException("Failed to write to JSON file", e);
@@ -358,6 +372,71 @@ class MiniProject1ApplicationTests {
 				.andExpect(MockMvcResultMatchers.content().string("Order added successfully"));
 	}
 
+
+	@Test
+	void testAddOrderToUserEndPointIdempotent() throws Exception {
+		User user = new User();
+		user.setId(UUID.randomUUID());
+		user.setName("Retrying User");
+		Cart cart = new Cart(UUID.randomUUID(), user.getId(), new ArrayList<>(List.of(new Product(UUID.randomUUID(), "Test Product", 10.0))));
+		addCart(cart);
+		addUser(user);
+		String key = UUID.randomUUID().toString();
+
+		MvcResult first = mockMvc.perform(MockMvcRequestBuilders.post("/user/{userId}/checkout", user.getId()).header("Idempotency-Key", key))
+				.andExpect(MockMvcResultMatchers.status().isOk())
+				.andExpect(MockMvcResultMatchers.header().doesNotExist("Idempotent-Replayed"))
+				.andReturn();
+		mockMvc.perform(MockMvcRequestBuilders.post("/user/{userId}/checkout", user.getId()).header("Idempotency-Key", key))
+				.andExpect(MockMvcResultMatchers.status().isOk())
+				.andExpect(MockMvcResultMatchers.header().string("Idempotent-Replayed", "true"))
+				.andExpect(MockMvcResultMatchers.header().string("Location", first.getResponse().getHeader("Location")))
+				.andExpect(MockMvcResultMatchers.content().string("Order added successfully"));
+
+		assertEquals(1, userService.getOrdersByUserId(user.getId()).size(), "A retried checkout should not place a second order");
+	}
+
+
+	@Test
+	void testAddOrderToUserEndPointStoresOrderId() throws Exception {
+		User user = new User();
+		user.setId(UUID.randomUUID());
+		user.setName("Referencing User");
+		Cart cart = new Cart(UUID.randomUUID(), user.getId(), new ArrayList<>(List.of(new Product(UUID.randomUUID(), "Test Product", 10.0))));
+		addCart(cart);
+		addUser(user);
+
+		mockMvc.perform(MockMvcRequestBuilders.post("/user/{userId}/checkout", user.getId()))
+				.andExpect(MockMvcResultMatchers.status().isOk());
+
+		User stored = userRepository.getUserById(user.getId());
+		assertEquals(1, stored.getOrderIds().size(), "Checkout should store the order's ID on the user");
+		assertTrue(stored.getOrders().isEmpty(), "Checkout should not embed the order in the user");
+		Order order = orderRepository.getOrderById(stored.getOrderIds().get(0));
+		assertNotNull(order, "The order should be stored with the other orders");
+		mockMvc.perform(MockMvcRequestBuilders.get("/user/{userId}/orders", user.getId()))
+				.andExpect(MockMvcResultMatchers.status().isOk())
+				.andExpect(MockMvcResultMatchers.content().json(objectMapper.writeValueAsString(List.of(order))));
+	}
+
+	@Test
+	void testMigrateEmbeddedOrders() throws Exception {
+		User user = new User();
+		user.setId(UUID.randomUUID());
+		user.setName("Legacy User");
+		Order embedded = new Order(UUID.randomUUID(), user.getId(), 10.0, List.of(new Product(UUID.randomUUID(), "Test Product", 10.0)));
+		user.getOrders().add(embedded);
+		addUser(user);
+
+		userService.migrateEmbeddedOrders();
+
+		User stored = userRepository.getUserById(user.getId());
+		assertEquals(List.of(embedded.getId()), stored.getOrderIds());
+		assertTrue(stored.getOrders().isEmpty(), "Embedded orders should be replaced by their IDs");
+		assertNotNull(orderRepository.getOrderById(embedded.getId()), "Embedded orders should be moved into the order repository");
+		assertEquals(List.of(embedded.getId()), userService.getOrdersByUserId(user.getId()).stream().map(Order::getId).toList());
+	}
+
 	
 	@Test
 	void testRemoveOrderOfUserEndPoint() throws Exception{
@@ -411,6 +490,16 @@ class MiniProject1ApplicationTests {
 		assertEquals(testProduct.getId(), getCarts().getLast().getProducts().get(0).getId(),"Product should be added correctly");
 	}
 
+	@Test
+	void testAddProductToMissingCartIfMatchEndPoint() throws Exception {
+		Product testProduct=new Product(UUID.randomUUID(), "Test Product", 10.0);
+		mockMvc.perform(MockMvcRequestBuilders.put("/cart/addProduct/{cartId}", UUID.randomUUID())
+				.header("If-Match", "\"0\"")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(objectMapper.writeValueAsString(testProduct)))
+				.andExpect(MockMvcResultMatchers.status().isNotFound());
+	}
+
 	
 
 	@Test
@@ -583,6 +672,104 @@ class MiniProject1ApplicationTests {
 	}
 
 
+	@Test
+	void testGetProductByIdEndPointNotModified() throws Exception{
+		Product testProduct10=new Product(UUID.randomUUID(), "Test Product", 10.0);
+		addProduct(testProduct10);
+		MvcResult result= mockMvc.perform(MockMvcRequestBuilders.get("/product/{productId}", testProduct10.getId()))
+				.andExpect(MockMvcResultMatchers.status().isOk())
+				.andExpect(MockMvcResultMatchers.header().exists("ETag"))
+				.andReturn();
+		String eTag = result.getResponse().getHeader("ETag");
+		mockMvc.perform(MockMvcRequestBuilders.get("/product/{productId}", testProduct10.getId()).header("If-None-Match", eTag))
+				.andExpect(MockMvcResultMatchers.status().isNotModified())
+				.andExpect(MockMvcResultMatchers.content().string(""));
+	}
+
+
+	@Test
+	void testUpdateProductEndPointIfMatch() throws Exception{
+		Product testProduct13=new Product(UUID.randomUUID(), "Test Product", 10.0);
+		addProduct(testProduct13);
+		Map<String,Object> body=new HashMap<>();
+		body.put("newName", "UpdatedName");
+		body.put("newPrice", 20.0);
+		mockMvc.perform(MockMvcRequestBuilders.put("/product/update/{id}", testProduct13.getId())
+				.header("If-Match", "\"0\"")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(objectMapper.writeValueAsString(body)))
+				.andExpect(MockMvcResultMatchers.status().isOk())
+				.andExpect(MockMvcResultMatchers.header().string("ETag", "\"1\""));
+		mockMvc.perform(MockMvcRequestBuilders.put("/product/update/{id}", testProduct13.getId())
+				.header("If-Match", "\"0\"")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(objectMapper.writeValueAsString(body)))
+				.andExpect(MockMvcResultMatchers.status().isPreconditionFailed());
+	}
+
+
+	@Test
+	void testGetProductsEndPointPaginated() throws Exception{
+		addProduct(new Product(UUID.randomUUID(), "Cheap Product", 5.0));
+		addProduct(new Product(UUID.randomUUID(), "Mid Product", 10.0));
+		addProduct(new Product(UUID.randomUUID(), "Dear Product", 20.0));
+		MvcResult result= mockMvc.perform(MockMvcRequestBuilders.get("/product/")
+				.param("sort", "price").param("order", "desc").param("limit", "2"))
+				.andExpect(MockMvcResultMatchers.status().isOk())
+				.andExpect(MockMvcResultMatchers.header().exists("Link"))
+				.andReturn();
+		List<Product> firstPage = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<List<Product>>() {});
+		assertEquals(List.of("Dear Product", "Mid Product"), firstPage.stream().map(Product::getName).toList());
+
+		String link = result.getResponse().getHeader("Link");
+		String cursor = link.substring(link.indexOf("cursor=") + "cursor=".length(), link.indexOf('>'));
+		MvcResult next= mockMvc.perform(MockMvcRequestBuilders.get("/product/")
+				.param("sort", "price").param("order", "desc").param("limit", "2").param("cursor", cursor))
+				.andExpect(MockMvcResultMatchers.status().isOk())
+				.andExpect(MockMvcResultMatchers.header().doesNotExist("Link"))
+				.andReturn();
+		List<Product> secondPage = objectMapper.readValue(next.getResponse().getContentAsString(), new TypeReference<List<Product>>() {});
+		assertEquals(List.of("Cheap Product"), secondPage.stream().map(Product::getName).toList());
+
+		mockMvc.perform(MockMvcRequestBuilders.get("/product/").param("sort", "name").param("cursor", cursor))
+				.andExpect(MockMvcResultMatchers.status().isBadRequest());
+	}
+
+
+	@Test
+	void testExportProductsEndPoint() throws Exception{
+		addProduct(new Product(UUID.randomUUID(), "First Product", 5.0));
+		addProduct(new Product(UUID.randomUUID(), "Second Product", 10.0));
+		MvcResult result= mockMvc.perform(MockMvcRequestBuilders.get("/product/export"))
+				.andExpect(MockMvcResultMatchers.status().isOk())
+				.andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith("application/x-ndjson"))
+				.andReturn();
+		String[] lines = result.getResponse().getContentAsString().split("\n");
+		assertEquals(getProducts().size(), lines.length, "Each product should be exported on its own line");
+		assertEquals("First Product", objectMapper.readValue(lines[0], Product.class).getName());
+	}
+
+
+	@Test
+	void testImportProductsEndPoint() throws Exception{
+		String body = "[{\"name\":\"Imported One\",\"price\":5.0},{\"name\":\"\",\"price\":1.0},{\"name\":\"Imported Two\",\"price\":\"abc\"},{\"name\":\"Imported Three\",\"price\":7.0}]";
+		mockMvc.perform(MockMvcRequestBuilders.post("/product/import")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(body))
+				.andExpect(MockMvcResultMatchers.status().isOk())
+				.andExpect(MockMvcResultMatchers.jsonPath("$.imported").value(2))
+				.andExpect(MockMvcResultMatchers.jsonPath("$.errors[0].index").value(1))
+				.andExpect(MockMvcResultMatchers.jsonPath("$.errors[1].index").value(2));
+		mockMvc.perform(MockMvcRequestBuilders.post("/product/import")
+				.contentType("application/x-ndjson")
+				.content("{\"name\":\"Imported Four\",\"price\":3.0}\n{not json}\n"))
+				.andExpect(MockMvcResultMatchers.status().isOk())
+				.andExpect(MockMvcResultMatchers.jsonPath("$.imported").value(1))
+				.andExpect(MockMvcResultMatchers.jsonPath("$.rejected").value(1));
+		assertEquals(3, getProducts().size(), "Only valid products should be imported");
+	}
+
+
 	@Test
 	void testDeleteProductByIdEndPoint1() throws Exception{
 		Product testProduct15=new Product();
@@ -652,6 +839,21 @@ class MiniProject1ApplicationTests {
 				.andExpect(MockMvcResultMatchers.content().json(objectMapper.writeValueAsString(cart)));
 	}
 
+
+	@Test
+	void testGetCartSummaryEndPoint() throws Exception{
+		Product product = new Product(UUID.randomUUID(), "Summary Product", 2.5);
+		Cart cart = new Cart(UUID.randomUUID(), UUID.randomUUID(), new ArrayList<>(List.of(product, product, new Product(UUID.randomUUID(), "Other Product", 10.0))));
+		addCart(cart);
+		mockMvc.perform(MockMvcRequestBuilders.get("/cart/{id}/summary", cart.getId()))
+				.andExpect(MockMvcResultMatchers.status().isOk())
+				.andExpect(MockMvcResultMatchers.jsonPath("$.itemCount").value(3))
+				.andExpect(MockMvcResultMatchers.jsonPath("$.totalPrice").value(15.0))
+				.andExpect(MockMvcResultMatchers.jsonPath("$.items").doesNotExist());
+		mockMvc.perform(MockMvcRequestBuilders.get("/cart/{id}/summary", UUID.randomUUID()))
+				.andExpect(MockMvcResultMatchers.status().isNotFound());
+	}
+
 	
 	
 
@@ -0,0 +1,118 @@
+package com.example.benchmark;
+
+import com.example.model.Order;
+import com.example.model.Product;
+import com.example.repository.CartRepository;
+import com.example.repository.OrderRepository;
+import com.example.repository.ProductRepository;
+import com.example.repository.TransactionJournal;
+import com.example.repository.UserRepository;
+import com.example.service.CartService;
+import com.example.service.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the cart and checkout paths over size users, each with a cart, and size products: adding a
+ * product to a cart, and a checkout (which first adds a product, so the cart is never empty). Checkouts
+ * go through the transaction journal, which the benchmark thread checkpoints whenever checkpointIntervalMs has
+ * passed since the last checkpoint, as the application's scheduler does, so the cost of bringing the data files up
+ * to date is part of the measured time rather than left to pile up in the journal. Each iteration starts from fresh copies of the generated fixtures and
+ * an empty journal, so the carts, orders and journal an iteration fills never slow down the next one.
+ *
+ * Run with: mvn -Pbenchmark clean verify -Djmh.args="CheckoutBenchmark -p size=1000,10000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CheckoutBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    @Param({"snapshot", "log"})
+    public String persistenceMode;
+
+    @Param({"none"})
+    public String fsyncPolicy;
+
+    @Param({"1000"})
+    public long checkpointIntervalMs;
+
+    private Path dataDir;
+    private TransactionJournal journal;
+    private long lastCheckpointNanos;
+    private CartRepository cartRepository;
+    private UserService userService;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        dataDir = Files.createTempDirectory("checkout-benchmark");
+        journal = new TransactionJournal();
+        ReflectionTestUtils.setField(journal, "journalPath", dataDir.resolve("transactions.journal").toString());
+        ReflectionTestUtils.setField(journal, "fsyncPolicy", fsyncPolicy);
+        ProductRepository productRepository = Fixtures.open(new ProductRepository(), "productDataPath",
+                Fixtures.copy(Fixtures.products(size), dataDir, "products.json"), persistenceMode, fsyncPolicy, journal);
+        UserRepository userRepository = Fixtures.open(new UserRepository(), "userDataPath",
+                Fixtures.copy(Fixtures.users(size), dataDir, "users.json"), persistenceMode, fsyncPolicy, journal);
+        cartRepository = Fixtures.open(new CartRepository(), "cartDataPath",
+                Fixtures.copy(Fixtures.carts(size), dataDir, "carts.json"), persistenceMode, fsyncPolicy, journal);
+        OrderRepository orderRepository = Fixtures.open(new OrderRepository(), "orderDataPath",
+                dataDir.resolve("orders.json"), persistenceMode, fsyncPolicy, journal);
+        CartService cartService = new CartService(cartRepository, productRepository);
+        userService = new UserService(userRepository, cartRepository, productRepository, orderRepository, cartService);
+        lastCheckpointNanos = System.nanoTime();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        Fixtures.delete(dataDir);
+    }
+
+    @Benchmark
+    public void addProductToCart() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        cartRepository.addProductToCart(Fixtures.cartId(random.nextInt(size)), Fixtures.product(random.nextInt(size)));
+        checkpointIfDue();
+    }
+
+    @Benchmark
+    public Order checkout() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int user = random.nextInt(size);
+        Product product = Fixtures.product(random.nextInt(size));
+        cartRepository.addProductToCart(Fixtures.cartId(user), product);
+        Order order = userService.addOrderToUser(Fixtures.userId(user));
+        checkpointIfDue();
+        return order;
+    }
+
+    private void checkpointIfDue() {
+        long now = System.nanoTime();
+        if (now - lastCheckpointNanos >= TimeUnit.MILLISECONDS.toNanos(checkpointIntervalMs)) {
+            journal.checkpoint();
+            lastCheckpointNanos = now;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.benchmark;
+
+import com.example.model.Cart;
+import com.example.model.Product;
+import com.example.repository.CartRepository;
+import com.example.repository.MainRepository;
+import com.example.repository.ProductRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the data file format: loading a whole data file into a repository (read and parse, plus building
+ * the cache) and rewriting it (serialize and write), for products and for UUID-heavy carts, in JSON and in
+ * Smile. The file size of each fixture is printed when its trial starts.
+ *
+ * Run with: mvn -Pbenchmark clean verify -Djmh.args="DataFormatBenchmark -p size=10000,100000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataFormatBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    @Param({"products", "carts"})
+    public String entity;
+
+    @Param({"json", "smile"})
+    public String format;
+
+    private Path dataDir;
+    private MainRepository<?> repository;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataDir = Files.createTempDirectory("data-format-benchmark");
+        boolean carts = "carts".equals(entity);
+        Path fixture = carts ? Fixtures.carts(size) : Fixtures.products(size);
+        if ("smile".equals(format)) {
+            fixture = Fixtures.smile(fixture, carts ? Cart.class : Product.class);
+        }
+        Path dataFile = Fixtures.copy(fixture, dataDir, entity + "." + format);
+        System.out.printf("%n%s: %d bytes%n", dataFile.getFileName(), Files.size(dataFile));
+        repository = carts
+                ? Fixtures.open(new CartRepository(), "cartDataPath", dataFile, "snapshot", "none", null)
+                : Fixtures.open(new ProductRepository(), "productDataPath", dataFile, "snapshot", "none", null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Fixtures.delete(dataDir);
+    }
+
+    @Benchmark
+    public void load() {
+        repository.loadCache();
+    }
+
+    @Benchmark
+    public void write() {
+        repository.rewrite();
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.benchmark;
+
+import com.example.model.Cart;
+import com.example.model.LineItem;
+import com.example.model.Product;
+import com.example.model.User;
+import com.example.repository.DataFileConverter;
+import com.example.repository.MainRepository;
+import com.example.repository.TransactionJournal;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Data files for the benchmarks, generated once per size under target/benchmark-fixtures and reused by
+ * later runs. Entity IDs are derived from their index, so a benchmark can address any entity of a
+ * fixture without loading it first
+ */
+final class Fixtures {
+
+    private static final Path DIRECTORY = Path.of("target", "benchmark-fixtures");
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private Fixtures() {
+    }
+
+    static UUID productId(int index) {
+        return new UUID(1, index);
+    }
+
+    static UUID userId(int index) {
+        return new UUID(2, index);
+    }
+
+    static UUID cartId(int index) {
+        return new UUID(3, index);
+    }
+
+    static Product product(int index) {
+        return new Product(productId(index), "Product " + index, 1 + index % 1000 + 0.99);
+    }
+
+    /**
+     * size products
+     */
+    static Path products(int size) throws IOException {
+        return generate("products-" + size + ".json", size, Fixtures::product);
+    }
+
+    /**
+     * size users without orders
+     */
+    static Path users(int size) throws IOException {
+        return generate("users-" + size + ".json", size, index -> new User(userId(index), "User " + index, new ArrayList<>()));
+    }
+
+    /**
+     * One cart per user, each holding three of the products
+     */
+    static Path carts(int size) throws IOException {
+        return generate("carts-" + size + ".json", size, index -> {
+            Cart cart = new Cart(cartId(index), userId(index), new ArrayList<>());
+            List<LineItem> items = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                Product product = product((index + i) % size);
+                items.add(new LineItem(product.getId(), 1, product.getPrice()));
+            }
+            cart.setItems(items);
+            return cart;
+        });
+    }
+
+    /**
+     * The same fixture converted to Smile, next to it
+     */
+    static Path smile(Path fixture, Class<?> entityType) throws IOException {
+        Path converted = fixture.resolveSibling(fixture.getFileName().toString().replace(".json", ".smile"));
+        if (!Files.exists(converted)) {
+            DataFileConverter.convert(entityType, fixture, converted);
+        }
+        return converted;
+    }
+
+    /**
+     * Copy a fixture into the directory as the named data file, so a benchmark's writes never touch the fixture
+     */
+    static Path copy(Path fixture, Path directory, String name) throws IOException {
+        return Files.copy(fixture, directory.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Point a repository at a data file and load it, the way Spring would from the application properties
+     */
+    static <R extends MainRepository<?>> R open(R repository, String dataPathField, Path dataFile,
+                                               String persistenceMode, String fsyncPolicy, TransactionJournal journal) {
+        ReflectionTestUtils.setField(repository, dataPathField, dataFile.toString());
+        ReflectionTestUtils.setField(repository, "persistenceMode", persistenceMode);
+        ReflectionTestUtils.setField(repository, "fsyncPolicy", fsyncPolicy);
+        if (journal != null) {
+            repository.setJournal(journal);
+        }
+        repository.loadCache();
+        return repository;
+    }
+
+    static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private interface Generator {
+        Object entity(int index);
+    }
+
+    // Entities are written one at a time, so even the largest fixture is never held in memory as a list
+    private static Path generate(String name, int size, Generator generator) throws IOException {
+        Path fixture = DIRECTORY.resolve(name);
+        if (Files.exists(fixture)) {
+            return fixture;
+        }
+        Files.createDirectories(DIRECTORY);
+        Path temp = DIRECTORY.resolve(name + ".tmp");
+        try (SequenceWriter writer = OBJECT_MAPPER.writer().writeValuesAsArray(temp.toFile())) {
+            for (int i = 0; i < size; i++) {
+                writer.write(generator.entity(i));
+            }
+        }
+        return Files.move(temp, fixture, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
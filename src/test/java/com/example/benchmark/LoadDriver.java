@@ -0,0 +1,188 @@
+package com.example.benchmark;
+
+import com.example.MiniProject1.MiniProject1Application;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Boots MiniProject1Application over a directory of data files and drives it from a fixed number of HTTP
+ * clients, each picking operations from a weighted mix with a Random seeded from the run's seed plus the
+ * client's index, and recording each operation's latency in an HdrHistogram. Shared by LoadHarness and
+ * ThreadModeBenchmark so both measure the same way.
+ *
+ * With a rate of 0 each client sends its next request as soon as the previous one completes; with a rate,
+ * requests are scheduled at that total rate and latency is measured from the scheduled send time, so a
+ * stalled server is charged for the requests it delayed (no coordinated omission).
+ */
+final class LoadDriver<O extends Enum<O>> {
+
+    // Highest latency tracked, in microseconds, at three significant digits
+    static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    /**
+     * Builds the request for one operation against the application at baseUrl
+     */
+    interface Requests<O> {
+        HttpRequest build(String baseUrl, O operation, Random random) throws IOException;
+    }
+
+    private final Class<O> operations;
+    private final List<O> choices = new ArrayList<>();
+    private final Requests<O> requests;
+    private final int concurrency;
+    private final int rate;
+    private final long seed;
+
+    LoadDriver(Class<O> operations, Map<O, Integer> mix, Requests<O> requests, int concurrency, int rate, long seed) {
+        this.operations = operations;
+        mix.forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                choices.add(operation);
+            }
+        });
+        this.requests = requests;
+        this.concurrency = concurrency;
+        this.rate = rate;
+        this.seed = seed;
+    }
+
+    /**
+     * Start the application on a random local port with its data files and journal in dataDir
+     */
+    static ConfigurableApplicationContext boot(Path dataDir, boolean virtualThreads, String fsyncPolicy) {
+        return new SpringApplicationBuilder(MiniProject1Application.class)
+                .properties(
+                        "server.port=0",
+                        "spring.devtools.restart.enabled=false",
+                        "spring.threads.virtual.enabled=" + virtualThreads,
+                        "spring.application.fsyncPolicy=" + fsyncPolicy,
+                        "spring.application.productDataPath=" + dataDir.resolve("products.json"),
+                        "spring.application.cartDataPath=" + dataDir.resolve("carts.json"),
+                        "spring.application.userDataPath=" + dataDir.resolve("users.json"),
+                        "spring.application.orderDataPath=" + dataDir.resolve("orders.json"),
+                        "spring.application.journalPath=" + dataDir.resolve("transactions.journal"))
+                .run();
+    }
+
+    static String baseUrl(ConfigurableApplicationContext context) {
+        return "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+    }
+
+    /**
+     * Run the clients for the given time, returning the latencies and error counts of each operation across
+     * all of them. A failed request's latency is recorded like any other
+     */
+    Result<O> drive(String baseUrl, int seconds) {
+        HttpClient client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+        long startNanos = System.nanoTime();
+        long deadline = startNanos + TimeUnit.SECONDS.toNanos(seconds);
+        long intervalNanos = rate > 0 ? TimeUnit.SECONDS.toNanos(concurrency) / rate : 0;
+        List<Result<O>> perClient = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            perClient.add(new Result<>(operations));
+        }
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                Result<O> result = perClient.get(i);
+                Random random = new Random(seed + i);
+                // Spread the clients' schedules across one interval so they don't fire in lockstep
+                long offset = intervalNanos * i / concurrency;
+                clients.submit(() -> {
+                    long scheduled = startNanos + offset;
+                    while (true) {
+                        if (intervalNanos > 0) {
+                            LockSupport.parkNanos(scheduled - System.nanoTime());
+                        }
+                        long sent = intervalNanos > 0 ? scheduled : System.nanoTime();
+                        if (sent >= deadline) {
+                            return;
+                        }
+                        O operation = choices.get(random.nextInt(choices.size()));
+                        boolean ok = send(client, baseUrl, operation, random);
+                        long latencyMicros = (System.nanoTime() - sent) / 1_000;
+                        result.histograms.get(operation).recordValue(Math.min(latencyMicros, HIGHEST_LATENCY_MICROS));
+                        if (!ok) {
+                            result.errors[operation.ordinal()]++;
+                        }
+                        scheduled += intervalNanos;
+                    }
+                });
+            }
+        }
+        // Closing the executor waited for every client, so all their results are visible here
+        Result<O> merged = new Result<>(operations);
+        for (Result<O> result : perClient) {
+            merged.add(result);
+        }
+        return merged;
+    }
+
+    private boolean send(HttpClient client, String baseUrl, O operation, Random random) {
+        try {
+            int status = client.send(requests.build(baseUrl, operation, random), HttpResponse.BodyHandlers.discarding())
+                    .statusCode();
+            return status >= 200 && status < 300;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * One client's, or the whole run's, latency histogram and error count per operation
+     */
+    static final class Result<O extends Enum<O>> {
+        final Map<O, Histogram> histograms;
+        final long[] errors;
+
+        Result(Class<O> operations) {
+            histograms = new EnumMap<>(operations);
+            for (O operation : operations.getEnumConstants()) {
+                histograms.put(operation, new Histogram(HIGHEST_LATENCY_MICROS, 3));
+            }
+            errors = new long[operations.getEnumConstants().length];
+        }
+
+        void add(Result<O> other) {
+            other.histograms.forEach((operation, histogram) -> histograms.get(operation).add(histogram));
+            for (int i = 0; i < errors.length; i++) {
+                errors[i] += other.errors[i];
+            }
+        }
+
+        /**
+         * Every operation's latencies in one histogram
+         */
+        Histogram all() {
+            Histogram all = new Histogram(HIGHEST_LATENCY_MICROS, 3);
+            histograms.values().forEach(all::add);
+            return all;
+        }
+
+        long allErrors() {
+            long all = 0;
+            for (long operationErrors : errors) {
+                all += operationErrors;
+            }
+            return all;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * End-to-end load generator: starts MiniProject1Application on a random local port over seeded data in
+ * target/load-data, drives a weighted mix of real endpoints from a fixed number of clients, and records
+ * each operation's latency in an HdrHistogram (see LoadDriver). Everything runs on one machine without
+ * network access.
+ *
+ * Runs are reproducible: the data set is generated from its size, and each client draws its operations
+ * from a Random seeded with load.seed plus the client's index. With load.rate unset each client sends its
+ * next request as soon as the previous one completes; with load.rate set, requests are scheduled at that
+ * total rate, with latency measured from the scheduled send time.
+ *
+ * The report goes to target/load-report/&lt;release&gt;-&lt;timestamp&gt;/ as report.json, with the same
+ * layout for every run so releases can be compared, plus one .hgrm percentile distribution per operation.
+ * Not part of the regular test run; run it explicitly with, for example,
+ *   mvn test -Dtest=LoadHarness -Dload.release=1.4.0 -Dload.concurrency=64 -Dload.seconds=60
+ *       -Dload.mix=checkout=10,addProductToCart=30,products=40,orders=20
+ */
+class LoadHarness {
+
+    private static final String RELEASE = System.getProperty("load.release", "dev");
+    private static final int SIZE = Integer.getInteger("load.size", 10_000);
+    private static final int CONCURRENCY = Integer.getInteger("load.concurrency", 64);
+    private static final int WARMUP_SECONDS = Integer.getInteger("load.warmupSeconds", 10);
+    private static final int SECONDS = Integer.getInteger("load.seconds", 60);
+    // Total requests per second across all clients; 0 runs closed-loop as fast as the server answers
+    private static final int RATE = Integer.getInteger("load.rate", 0);
+    private static final String MIX = System.getProperty("load.mix", "checkout=10,addProductToCart=30,products=40,orders=20");
+    // Page size for the listing endpoints; 0 lists everything
+    private static final int PAGE_SIZE = Integer.getInteger("load.pageSize", 100);
+    private static final long SEED = Long.getLong("load.seed", 42);
+    private static final boolean VIRTUAL_THREADS = Boolean.getBoolean("load.virtualThreads");
+    private static final String FSYNC_POLICY = System.getProperty("load.fsyncPolicy", "group");
+    private static final Path REPORT_DIRECTORY = Path.of(System.getProperty("load.report", "target/load-report"));
+
+    enum Operation {
+        checkout, addProductToCart, products, orders
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    @Test
+    void run() throws Exception {
+        Map<Operation, Integer> mix = parseMix(MIX);
+        Path dataDir = seed();
+        LoadDriver<Operation> driver = new LoadDriver<>(Operation.class, mix, this::request, CONCURRENCY, RATE, SEED);
+        try (ConfigurableApplicationContext context = LoadDriver.boot(dataDir, VIRTUAL_THREADS, FSYNC_POLICY)) {
+            String baseUrl = LoadDriver.baseUrl(context);
+            driver.drive(baseUrl, WARMUP_SECONDS);
+            long start = System.nanoTime();
+            LoadDriver.Result<Operation> result = driver.drive(baseUrl, SECONDS);
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+            report(mix, result, elapsedSeconds);
+        }
+    }
+
+    /**
+     * A fresh copy of the fixtures for SIZE users, carts and products, and no orders
+     */
+    private Path seed() throws IOException {
+        Path dataDir = Path.of("target", "load-data");
+        if (Files.exists(dataDir)) {
+            Fixtures.delete(dataDir);
+        }
+        Files.createDirectories(dataDir);
+        Fixtures.copy(Fixtures.products(SIZE), dataDir, "products.json");
+        Fixtures.copy(Fixtures.users(SIZE), dataDir, "users.json");
+        Fixtures.copy(Fixtures.carts(SIZE), dataDir, "carts.json");
+        Files.writeString(dataDir.resolve("orders.json"), "[]");
+        return dataDir;
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            weights.put(Operation.valueOf(parts[0]), Integer.parseInt(parts[1]));
+        }
+        return weights;
+    }
+
+    private HttpRequest request(String baseUrl, Operation operation, Random random) {
+        int user = random.nextInt(SIZE);
+        return switch (operation) {
+            case checkout -> HttpRequest.newBuilder(URI.create(baseUrl + "/user/" + Fixtures.userId(user) + "/checkout"))
+                    .POST(HttpRequest.BodyPublishers.noBody()).build();
+            case addProductToCart -> HttpRequest.newBuilder(URI.create(baseUrl + "/user/addProductToCart?userId="
+                            + Fixtures.userId(user) + "&productId=" + Fixtures.productId(random.nextInt(SIZE))))
+                    .PUT(HttpRequest.BodyPublishers.noBody()).build();
+            case products -> HttpRequest.newBuilder(URI.create(baseUrl + "/product/" + pageQuery())).GET().build();
+            case orders -> HttpRequest.newBuilder(URI.create(baseUrl + "/order/" + pageQuery())).GET().build();
+        };
+    }
+
+    private static String pageQuery() {
+        return PAGE_SIZE > 0 ? "?limit=" + PAGE_SIZE : "";
+    }
+
+    private void report(Map<Operation, Integer> mix, LoadDriver.Result<Operation> result, double elapsedSeconds)
+            throws IOException {
+        String timestamp = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(ZoneOffset.UTC).format(Instant.now());
+        Path directory = REPORT_DIRECTORY.resolve(RELEASE + "-" + timestamp);
+        Files.createDirectories(directory);
+
+        Map<String, Object> configuration = new LinkedHashMap<>();
+        configuration.put("size", SIZE);
+        configuration.put("concurrency", CONCURRENCY);
+        configuration.put("warmupSeconds", WARMUP_SECONDS);
+        configuration.put("seconds", SECONDS);
+        configuration.put("rate", RATE);
+        configuration.put("mix", mix);
+        configuration.put("pageSize", PAGE_SIZE);
+        configuration.put("seed", SEED);
+        configuration.put("virtualThreads", VIRTUAL_THREADS);
+        configuration.put("fsyncPolicy", FSYNC_POLICY);
+
+        Map<String, Object> environment = new LinkedHashMap<>();
+        environment.put("java", System.getProperty("java.version"));
+        environment.put("os", System.getProperty("os.name") + " " + System.getProperty("os.version"));
+        environment.put("processors", Runtime.getRuntime().availableProcessors());
+
+        Map<String, Object> operations = new LinkedHashMap<>();
+        PrintStream out = System.out;
+        out.printf("%n%-18s %10s %8s %10s %10s %10s %10s %10s%n",
+                "operation", "requests/s", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Operation operation : Operation.values()) {
+            Histogram histogram = result.histograms.get(operation);
+            long operationErrors = result.errors[operation.ordinal()];
+            operations.put(operation.name(), summarize(histogram, operationErrors, elapsedSeconds));
+            print(out, operation.name(), histogram, operationErrors, elapsedSeconds);
+            try (PrintStream hgrm = new PrintStream(Files.newOutputStream(directory.resolve(operation.name() + ".hgrm")))) {
+                histogram.outputPercentileDistribution(hgrm, 1000.0);
+            }
+        }
+        Histogram all = result.all();
+        long errors = result.allErrors();
+        print(out, "all", all, errors, elapsedSeconds);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("release", RELEASE);
+        report.put("timestamp", Instant.now().toString());
+        report.put("configuration", configuration);
+        report.put("environment", environment);
+        report.put("operations", operations);
+        report.put("all", summarize(all, errors, elapsedSeconds));
+        objectMapper.writeValue(directory.resolve("report.json").toFile(), report);
+        out.println("Report written to " + directory);
+    }
+
+    private static Map<String, Object> summarize(Histogram histogram, long errors, double elapsedSeconds) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("requests", histogram.getTotalCount());
+        summary.put("errors", errors);
+        summary.put("throughput", histogram.getTotalCount() / elapsedSeconds);
+        summary.put("p50Ms", histogram.getValueAtPercentile(50) / 1000.0);
+        summary.put("p90Ms", histogram.getValueAtPercentile(90) / 1000.0);
+        summary.put("p99Ms", histogram.getValueAtPercentile(99) / 1000.0);
+        summary.put("p999Ms", histogram.getValueAtPercentile(99.9) / 1000.0);
+        summary.put("maxMs", histogram.getMaxValue() / 1000.0);
+        return summary;
+    }
+
+    private static void print(PrintStream out, String name, Histogram histogram, long errors, double elapsedSeconds) {
+        out.printf("%-18s %10.0f %8d %10.2f %10.2f %10.2f %10.2f %10.2f%n", name,
+                histogram.getTotalCount() / elapsedSeconds, errors,
+                histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(90) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0);
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.benchmark;
+
+import com.example.model.Product;
+import com.example.repository.ProductRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the MainRepository operations behind every endpoint, through ProductRepository: lookup by ID,
+ * reading everything, inserting, updating one product, replacing the whole data set and discounting a
+ * batch of products. Each iteration starts from a fresh copy of the generated fixture, so inserts made by
+ * one iteration never leave the next with a larger data file or log to write.
+ *
+ * Run with: mvn -Pbenchmark clean verify -Djmh.args="RepositoryBenchmark -p size=1000,10000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    @Param({"snapshot", "log"})
+    public String persistenceMode;
+
+    // "none" measures the repository itself; "always" adds the disk's fsync latency to every write
+    @Param({"none"})
+    public String fsyncPolicy;
+
+    private Path dataDir;
+    private ProductRepository repository;
+    private ArrayList<Product> products;
+    private ArrayList<UUID> discountIds;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        dataDir = Files.createTempDirectory("repository-benchmark");
+        Path dataFile = Fixtures.copy(Fixtures.products(size), dataDir, "products.json");
+        repository = Fixtures.open(new ProductRepository(), "productDataPath", dataFile, persistenceMode, fsyncPolicy, null);
+        products = repository.getProducts();
+        discountIds = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            discountIds.add(Fixtures.productId(i % size));
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        Fixtures.delete(dataDir);
+    }
+
+    private UUID randomId() {
+        return Fixtures.productId(ThreadLocalRandom.current().nextInt(size));
+    }
+
+    @Benchmark
+    public Product lookup() {
+        return repository.getProductById(randomId());
+    }
+
+    @Benchmark
+    public ArrayList<Product> findAll() {
+        return repository.getProducts();
+    }
+
+    @Benchmark
+    public Product insert() {
+        return repository.addProduct(new Product("Inserted", 9.99));
+    }
+
+    @Benchmark
+    public Product update() {
+        return repository.updateProduct(randomId(), "Updated", 19.99);
+    }
+
+    @Benchmark
+    public void saveAll() {
+        repository.saveAll(products);
+    }
+
+    @Benchmark
+    public void discount() {
+        repository.applyDiscount(10, discountIds);
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.benchmark;
+
+import com.example.model.Cart;
+import com.example.model.Product;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Compares request throughput and latency percentiles with request handling on the Tomcat platform-thread
+ * pool against virtual threads. Each mode boots the application on a random port over its own fresh copy of
+ * the same seeded data, so neither mode inherits the carts and journal the other one grew, warms up, then drives a mix of product lookups and add-to-cart writes (which block on file I/O) from
+ * a fixed number of concurrent clients through LoadDriver, so latencies are recorded in HdrHistograms
+ * just as the load harness records them.
+ *
+ * Not part of the regular test run; run it explicitly with
+ *   mvn test -Dtest=ThreadModeBenchmark -Dbenchmark.concurrency=400 -Dbenchmark.seconds=20
+ */
+class ThreadModeBenchmark {
+
+    private static final int CONCURRENCY = Integer.getInteger("benchmark.concurrency", 400);
+    private static final int WARMUP_SECONDS = Integer.getInteger("benchmark.warmupSeconds", 5);
+    private static final int SECONDS = Integer.getInteger("benchmark.seconds", 20);
+    // Percentage of requests that add a product to a cart rather than look one up
+    private static final int WRITE_PERCENT = Integer.getInteger("benchmark.writePercent", 10);
+    private static final String FSYNC_POLICY = System.getProperty("benchmark.fsyncPolicy", "always");
+    private static final long SEED = Long.getLong("benchmark.seed", 42);
+
+    enum Operation {
+        lookup, addToCart
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path dataDir;
+
+    private final List<Product> products = new ArrayList<>();
+    private final List<Cart> carts = new ArrayList<>();
+
+    @Test
+    void compareThreadModes() throws Exception {
+        for (int i = 0; i < 1_000; i++) {
+            products.add(new Product(UUID.randomUUID(), "Product " + i, 1 + i % 100));
+        }
+        for (int i = 0; i < 1_000; i++) {
+            carts.add(new Cart(UUID.randomUUID()));
+        }
+        System.out.printf("%n%-10s %12s %10s %10s %10s %10s %8s%n",
+                "threads", "requests/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "errors");
+        run("platform", false);
+        run("virtual", true);
+    }
+
+    /**
+     * Write the seeded products and empty carts into a new directory for one mode's run
+     */
+    private Path seed(String mode) throws IOException {
+        Path dataDir = Files.createDirectory(this.dataDir.resolve(mode));
+        objectMapper.writeValue(dataDir.resolve("products.json").toFile(), products);
+        objectMapper.writeValue(dataDir.resolve("carts.json").toFile(), carts);
+        objectMapper.writeValue(dataDir.resolve("users.json").toFile(), List.of());
+        objectMapper.writeValue(dataDir.resolve("orders.json").toFile(), List.of());
+        return dataDir;
+    }
+
+    private void run(String mode, boolean virtualThreads) throws Exception {
+        Path dataDir = seed(mode);
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        mix.put(Operation.lookup, 100 - WRITE_PERCENT);
+        mix.put(Operation.addToCart, WRITE_PERCENT);
+        LoadDriver<Operation> driver = new LoadDriver<>(Operation.class, mix, this::request, CONCURRENCY, 0, SEED);
+        try (ConfigurableApplicationContext context = LoadDriver.boot(dataDir, virtualThreads, FSYNC_POLICY)) {
+            String baseUrl = LoadDriver.baseUrl(context);
+            driver.drive(baseUrl, WARMUP_SECONDS);
+            long start = System.nanoTime();
+            LoadDriver.Result<Operation> result = driver.drive(baseUrl, SECONDS);
+            print(mode, result, (System.nanoTime() - start) / 1e9);
+        }
+    }
+
+    private HttpRequest request(String baseUrl, Operation operation, Random random) throws IOException {
+        Product product = products.get(random.nextInt(products.size()));
+        return switch (operation) {
+            case addToCart -> HttpRequest.newBuilder(URI.create(baseUrl + "/cart/addProduct/"
+                            + carts.get(random.nextInt(carts.size())).getId()))
+                    .header("Content-Type", "application/json")
+                    .PUT(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(product)))
+                    .build();
+            case lookup -> HttpRequest.newBuilder(URI.create(baseUrl + "/product/" + product.getId())).GET().build();
+        };
+    }
+
+    private static void print(String mode, LoadDriver.Result<Operation> result, double elapsedSeconds) {
+        Histogram all = result.all();
+        System.out.printf("%-10s %12.0f %10.2f %10.2f %10.2f %10.2f %8d%n", mode, all.getTotalCount() / elapsedSeconds,
+                all.getValueAtPercentile(50) / 1000.0, all.getValueAtPercentile(99) / 1000.0,
+                all.getValueAtPercentile(99.9) / 1000.0, all.getMaxValue() / 1000.0, result.allErrors());
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.repository;
+
+import com.example.model.Cart;
+import com.example.model.CartSummary;
+import com.example.model.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CartRepositoryTest {
+
+    @TempDir
+    Path dataDir;
+
+    private CartRepository cartRepository;
+
+    @BeforeEach
+    void setUp() {
+        cartRepository = new CartRepository();
+        ReflectionTestUtils.setField(cartRepository, "cartDataPath", dataDir.resolve("carts.json").toString());
+        cartRepository.loadCache();
+    }
+
+    // Test Case 1: The user index finds a cart after it is added and forgets it after it is deleted
+    @Test
+    void testGetCartByUserId_FollowsInsertAndDelete() {
+        UUID userId = UUID.randomUUID();
+        Cart cart = new Cart(userId);
+        cartRepository.addCart(cart);
+
+        assertEquals(cart.getId(), cartRepository.getCartByUserId(userId).getId());
+
+        cartRepository.deleteCartById(cart.getId());
+
+        assertNull(cartRepository.getCartByUserId(userId));
+    }
+
+    // Test Case 2: Re-saving a cart under a new user moves it in the index
+    @Test
+    void testGetCartByUserId_FollowsUserChange() {
+        UUID oldUserId = UUID.randomUUID();
+        UUID newUserId = UUID.randomUUID();
+        Cart cart = new Cart(oldUserId);
+        cartRepository.addCart(cart);
+
+        cart.setUserId(newUserId);
+        cartRepository.addCart(cart);
+
+        assertNull(cartRepository.getCartByUserId(oldUserId));
+        assertEquals(cart.getId(), cartRepository.getCartByUserId(newUserId).getId());
+    }
+
+    // Test Case 3: Adding a product keeps the cart reachable through the user index
+    @Test
+    void testGetCartByUserId_AfterAddingProduct() {
+        UUID userId = UUID.randomUUID();
+        Cart cart = new Cart(userId);
+        cartRepository.addCart(cart);
+
+        cartRepository.addProductToCart(cart.getId(), new Product("Test Product", 10.0));
+
+        assertEquals(1, cartRepository.getCartByUserId(userId).getProducts().size());
+    }
+
+    // Test Case 4: Concurrent additions to the same cart are not lost
+    @Test
+    void testAddProductToCart_ConcurrentUpdatesNotLost() throws InterruptedException {
+        UUID userId = UUID.randomUUID();
+        Cart cart = new Cart(userId);
+        cartRepository.addCart(cart);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 100; i++) {
+            int index = i;
+            executor.submit(() -> cartRepository.addProductToCart(cart.getId(), new Product("Product " + index, index)));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(100, cartRepository.getCartById(cart.getId()).getProducts().size());
+    }
+
+    // Test Case 5: A file with embedded products is read as line items and rewritten without them
+    @Test
+    void testRewrite_MigratesEmbeddedProducts() throws IOException {
+        Path cartsFile = dataDir.resolve("carts.json");
+        UUID cartId = UUID.randomUUID();
+        UUID productId = UUID.randomUUID();
+        Files.writeString(cartsFile, "[{\"id\":\"" + cartId + "\",\"userId\":\"" + UUID.randomUUID()
+                + "\",\"products\":[{\"id\":\"" + productId + "\",\"name\":\"Legacy Product\",\"price\":12.5}]}]");
+        cartRepository.loadCache();
+
+        Cart cart = cartRepository.getCartById(cartId);
+        assertEquals(1, cart.getItems().size());
+        assertEquals(productId, cart.getItems().get(0).getProductId());
+        assertEquals(12.5, cart.getItems().get(0).getUnitPrice());
+
+        cartRepository.rewrite();
+
+        String rewritten = Files.readString(cartsFile);
+        assertFalse(rewritten.contains("Legacy Product"), "Product copies should no longer be embedded");
+        assertTrue(rewritten.contains("\"items\""));
+    }
+
+    // Test Case 6: Repeated adds of a product share one line and deletes take off one unit at a time
+    @Test
+    void testAddProductToCart_CountsUnitsOnOneLine() {
+        Cart cart = new Cart(UUID.randomUUID());
+        cartRepository.addCart(cart);
+        Product product = new Product("Repeated Product", 4.0);
+
+        for (int i = 0; i < 5; i++) {
+            cartRepository.addProductToCart(cart.getId(), product);
+        }
+        cartRepository.deleteProductFromCart(cart.getId(), product);
+
+        Cart stored = cartRepository.getCartById(cart.getId());
+        assertEquals(1, stored.getItems().size());
+        assertEquals(4, stored.getItems().get(0).getQuantity());
+        assertEquals(4, stored.getProducts().size());
+        assertEquals(4, stored.getItemCount());
+        assertEquals(16.0, stored.getTotalPrice());
+    }
+
+    // Test Case 7: Removing through the legacy product list keeps the cart's totals and summary in step
+    @Test
+    void testProductListRemovals_UpdateSummary() {
+        Cart cart = new Cart(UUID.randomUUID());
+        cartRepository.addCart(cart);
+        Product cheap = new Product("Cheap Product", 2.0);
+        Product dear = new Product("Dear Product", 10.0);
+        cartRepository.applyToCart(cart.getId(), c -> {
+            c.addProduct(cheap, 3);
+            c.addProduct(dear, 2);
+        });
+
+        cartRepository.applyToCart(cart.getId(), c -> {
+            c.getProducts().remove(0);
+            c.getProducts().removeIf(product -> product.getId().equals(dear.getId()));
+        });
+
+        CartSummary summary = CartSummary.of(cartRepository.getCartById(cart.getId()));
+        assertEquals(2, summary.itemCount());
+        assertEquals(4.0, summary.totalPrice());
+
+        cartRepository.applyToCart(cart.getId(), c -> c.getProducts().clear());
+
+        summary = CartSummary.of(cartRepository.getCartById(cart.getId()));
+        assertEquals(0, summary.itemCount());
+        assertEquals(0.0, summary.totalPrice());
+    }
+
+    // Test Case 8: Paging one user's carts through the user index returns only theirs, in id order, page by page
+    @Test
+    void testGetCartsPage_ByUserPagesThroughUserIndex() {
+        UUID userId = UUID.randomUUID();
+        List<UUID> expected = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Cart cart = new Cart(userId);
+            cartRepository.addCart(cart);
+            expected.add(cart.getId());
+            cartRepository.addCart(new Cart(UUID.randomUUID()));
+        }
+        Collections.sort(expected);
+
+        List<UUID> paged = new ArrayList<>();
+        String cursor = null;
+        do {
+            Page<Cart> page = cartRepository.getCartsPage(userId, new PageQuery(null, false, cursor, 2));
+            page.items().forEach(cart -> paged.add(cart.getId()));
+            cursor = page.nextCursor();
+        } while (cursor != null);
+
+        assertEquals(expected, paged);
+        assertEquals(5, cartRepository.getCartsPage(userId, PageQuery.unpaged()).items().count());
+    }
+}
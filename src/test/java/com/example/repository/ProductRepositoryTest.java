@@ -0,0 +1,321 @@
+package com.example.repository;
+
+import com.example.model.Product;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProductRepositoryTest {
+
+    @TempDir
+    Path dataDir;
+
+    private String dataPath;
+
+    @BeforeEach
+    void setUp() {
+        dataPath = dataDir.resolve("products.json").toString();
+    }
+
+    private ProductRepository newRepository(String persistenceMode) {
+        ProductRepository repository = new ProductRepository();
+        ReflectionTestUtils.setField(repository, "productDataPath", dataPath);
+        ReflectionTestUtils.setField(repository, "persistenceMode", persistenceMode);
+        repository.loadCache();
+        return repository;
+    }
+
+    // Test Case 1: Log mode appends changes without rewriting the data file
+    @Test
+    void testLogMode_AppendsInsteadOfRewriting() {
+        ProductRepository repository = newRepository("log");
+        repository.saveAll(new ArrayList<>(List.of(new Product("Existing", 5.0))));
+        long snapshotLength = new File(dataPath).length();
+
+        repository.addProduct(new Product("Added", 10.0));
+
+        assertEquals(snapshotLength, new File(dataPath).length(), "Data file should not be rewritten");
+        assertTrue(new File(dataPath + ".log").exists(), "Change should be appended to the log");
+        assertEquals(2, repository.getProducts().size());
+    }
+
+    // Test Case 2: Restarting replays the log on top of the data file
+    @Test
+    void testLogMode_ReplaysLogOnLoad() {
+        ProductRepository repository = newRepository("log");
+        Product kept = repository.addProduct(new Product("Kept", 10.0));
+        Product deleted = repository.addProduct(new Product("Deleted", 20.0));
+        repository.updateProduct(kept.getId(), "Renamed", 15.0);
+        repository.deleteProductById(deleted.getId());
+
+        ProductRepository restarted = newRepository("log");
+
+        assertEquals(1, restarted.getProducts().size());
+        assertEquals("Renamed", restarted.getProductById(kept.getId()).getName());
+        assertNull(restarted.getProductById(deleted.getId()));
+    }
+
+    // Test Case 3: A torn record at the end of the log is dropped and later appends still replay
+    @Test
+    void testLogMode_IgnoresTornTail() throws IOException {
+        ProductRepository repository = newRepository("log");
+        Product product = repository.addProduct(new Product("Complete", 10.0));
+        Files.writeString(Path.of(dataPath + ".log"), "{\"op\":\"PUT\",\"id\":\"" + UUID.randomUUID(),
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        ProductRepository restarted = newRepository("log");
+        Product added = restarted.addProduct(new Product("After crash", 20.0));
+        ProductRepository recovered = newRepository("log");
+
+        assertEquals(2, recovered.getProducts().size());
+        assertNotNull(recovered.getProductById(product.getId()));
+        assertNotNull(recovered.getProductById(added.getId()));
+    }
+
+    // Test Case 4: Compaction folds the log into the data file
+    @Test
+    void testCompact_FoldsLogIntoDataFile() {
+        ProductRepository repository = newRepository("log");
+        Product product = repository.addProduct(new Product("Logged", 10.0));
+
+        repository.compact();
+
+        assertFalse(new File(dataPath + ".log").exists(), "Log should be truncated");
+        ProductRepository snapshotOnly = newRepository("snapshot");
+        assertNotNull(snapshotOnly.getProductById(product.getId()));
+    }
+
+    // Test Case 5: Changes made after compaction land in a new log segment and survive a restart
+    @Test
+    void testCompact_KeepsLaterChanges() {
+        ProductRepository repository = newRepository("log");
+        repository.addProduct(new Product("Before", 10.0));
+        assertEquals(1, repository.getLogRecordCount());
+
+        assertTrue(repository.compact());
+        assertEquals(0, repository.getLogSize());
+        Product after = repository.addProduct(new Product("After", 20.0));
+
+        ProductRepository restarted = newRepository("log");
+        assertEquals(2, restarted.getProducts().size());
+        assertNotNull(restarted.getProductById(after.getId()));
+    }
+
+    // Test Case 6: Rewrites go through a temp file that is renamed over the data file
+    @Test
+    void testSaveAll_LeavesNoTempFile() {
+        ProductRepository repository = newRepository("snapshot");
+        ReflectionTestUtils.setField(repository, "fsyncPolicy", "group");
+
+        repository.saveAll(new ArrayList<>(List.of(new Product("First", 10.0), new Product("Second", 20.0))));
+        repository.syncPending();
+
+        assertFalse(new File(dataPath + ".tmp").exists(), "Temp file should be renamed into place");
+        assertEquals(2, newRepository("snapshot").getProducts().size());
+    }
+
+    // Test Case 7: Concurrent writers are all persisted when their writes are grouped
+    @Test
+    void testGroupCommit_ConcurrentWritersAllPersisted() throws InterruptedException {
+        for (String mode : List.of("snapshot", "log")) {
+            new File(dataPath).delete();
+            new File(dataPath + ".log").delete();
+            ProductRepository repository = newRepository(mode);
+            ReflectionTestUtils.setField(repository, "groupCommitWindowMs", 2L);
+
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            for (int i = 0; i < 200; i++) {
+                int index = i;
+                executor.submit(() -> repository.addProduct(new Product("Product " + index, index)));
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+            assertEquals(200, newRepository(mode).getProducts().size(), "All writes should reach disk in " + mode + " mode");
+        }
+    }
+
+    // Test Case 8: Conditional updates succeed at the expected version and are rejected once it moves on
+    @Test
+    void testUpdateIfVersion_RejectsStaleVersion() {
+        ProductRepository repository = newRepository("snapshot");
+        Product product = repository.addProduct(new Product("Versioned", 10.0));
+
+        Product updated = repository.updateProduct(product.getId(), "First", 11.0, 0L);
+
+        assertEquals(1, updated.getVersion());
+        assertThrows(OptimisticLockingFailureException.class,
+                () -> repository.updateProduct(product.getId(), "Second", 12.0, 0L));
+        assertEquals("First", repository.getProductById(product.getId()).getName());
+    }
+
+    // Test Case 9: Loading walks the data file element by element and streaming returns entities in file order
+    @Test
+    void testStreamProducts_ReadsDataFileInOrder() {
+        ProductRepository writer = newRepository("snapshot");
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            products.add(new Product("Product " + i, i));
+        }
+        writer.saveAll(new ArrayList<>(products));
+
+        List<UUID> streamed = newRepository("snapshot").streamProducts().map(Product::getId).toList();
+
+        assertEquals(products.stream().map(Product::getId).toList(), streamed);
+    }
+
+    // Test Case 10: Following cursors visits every matching product exactly once in sort order
+    @Test
+    void testGetProductsPage_CursorWalksWholeIndex() {
+        ProductRepository repository = newRepository("snapshot");
+        for (int i = 0; i < 25; i++) {
+            repository.addProduct(new Product("Product " + i, i % 5));
+        }
+
+        List<Product> visited = new ArrayList<>();
+        String cursor = null;
+        do {
+            Page<Product> page = repository.getProductsPage(1.0, null, null, new PageQuery("price", false, cursor, 4));
+            visited.addAll(page.items().toList());
+            cursor = page.nextCursor();
+        } while (cursor != null);
+
+        assertEquals(20, visited.size());
+        assertEquals(20, visited.stream().map(Product::getId).distinct().count());
+        for (int i = 1; i < visited.size(); i++) {
+            assertTrue(visited.get(i - 1).getPrice() <= visited.get(i).getPrice());
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> repository.getProductsPage(null, null, null, new PageQuery("name", false, "not-a-cursor", 4)));
+    }
+
+    // Test Case 11: Reads, writes and the entity count are recorded against the repository's meters
+    @Test
+    void testMeterRegistry_RecordsFileIoAndEntityCount() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ProductRepository repository = new ProductRepository();
+        ReflectionTestUtils.setField(repository, "productDataPath", dataPath);
+        repository.setMeterRegistry(registry);
+        repository.loadCache();
+
+        repository.addProduct(new Product("Metered", 10.0));
+        repository.addProduct(new Product("Metered again", 20.0));
+
+        String name = "ProductRepository";
+        assertEquals(1, registry.get("repository.read").tag("repository", name).timer().count());
+        assertEquals(2, registry.get("repository.write").tag("repository", name).tag("kind", "snapshot").timer().count());
+        // Both rewrites are counted, the second of which is the data file as it stands
+        assertTrue(registry.get("repository.bytes.written").tag("repository", name).counter().count() > new File(dataPath).length());
+        assertEquals(2, registry.get("repository.entities").tag("repository", name).gauge().value());
+        assertTrue(registry.get("repository.lock.wait").tag("lock", "commit").timer().count() >= 2);
+    }
+
+    // Test Case 12: The memory storage engine serves the same operations without touching the data file
+    @Test
+    void testMemoryEngine_KeepsNothingOnDisk() {
+        ProductRepository repository = new ProductRepository();
+        ReflectionTestUtils.setField(repository, "productDataPath", dataPath);
+        ReflectionTestUtils.setField(repository, "storageEngine", "memory");
+        repository.loadCache();
+
+        Product kept = repository.addProduct(new Product("Kept", 10.0));
+        Product deleted = repository.addProduct(new Product("Deleted", 20.0));
+        repository.updateProduct(kept.getId(), "Renamed", 15.0);
+        repository.deleteProductById(deleted.getId());
+
+        assertFalse(new File(dataPath).exists(), "Nothing should be written to disk");
+        assertEquals(1, repository.getProducts().size());
+        assertEquals("Renamed", repository.getProductById(kept.getId()).getName());
+        assertFalse(repository.isLogMode());
+        assertFalse(repository.compact());
+    }
+
+    // Test Case 13: A .smile data file is written and read back in Smile, log records included
+    @Test
+    void testSmileDataFile_RoundTripsInBothModes() throws IOException {
+        dataPath = dataDir.resolve("products.smile").toString();
+        ProductRepository snapshot = newRepository("snapshot");
+        Product first = snapshot.addProduct(new Product("First", 10.0));
+        assertEquals(':', Files.readAllBytes(Path.of(dataPath))[0], "Data file should start with the Smile header");
+
+        ProductRepository logged = newRepository("log");
+        Product second = logged.addProduct(new Product("Second", 20.0));
+        logged.updateProduct(first.getId(), "Renamed", 15.0);
+        logged.deleteProductById(second.getId());
+        Product third = logged.addProduct(new Product("Third", 30.0));
+
+        ProductRepository restarted = newRepository("log");
+        assertEquals(2, restarted.getProducts().size());
+        assertEquals("Renamed", restarted.getProductById(first.getId()).getName());
+        assertNull(restarted.getProductById(second.getId()));
+        assertEquals(30.0, restarted.getProductById(third.getId()).getPrice());
+    }
+
+    // Test Case 14: Converting to Smile and back keeps every product and shrinks the file
+    @Test
+    void testDataFileConverter_RoundTripsBetweenJsonAndSmile() throws IOException {
+        ProductRepository repository = newRepository("snapshot");
+        for (int i = 0; i < 100; i++) {
+            repository.addProduct(new Product("Product " + i, i));
+        }
+        Path json = Path.of(dataPath);
+        Path smile = dataDir.resolve("products.smile");
+        Path back = dataDir.resolve("products-back.json");
+
+        assertEquals(100, DataFileConverter.convert(Product.class, json, smile));
+        assertEquals(100, DataFileConverter.convert(Product.class, smile, back));
+
+        assertTrue(Files.size(smile) < Files.size(json), "Smile should be smaller than JSON");
+        assertEquals(Files.readString(json), Files.readString(back));
+        dataPath = smile.toString();
+        assertEquals(repository.getProducts().size(), newRepository("snapshot").getProducts().size());
+    }
+
+    // Test Case 15: Paging by the filtered key walks just its range, in either direction and across cursors
+    @Test
+    void testGetProductsPage_WalksOnlyTheFilteredRange() {
+        ProductRepository repository = newRepository("snapshot");
+        for (int i = 0; i < 20; i++) {
+            repository.addProduct(new Product((i % 2 == 0 ? "Apple " : "Banana ") + i, i));
+        }
+        repository.addProduct(new Product("Apple\uffff", 100.0));
+        repository.addProduct(new Product("Applf", 100.0));
+
+        List<Double> prices = new ArrayList<>();
+        String cursor = null;
+        do {
+            Page<Product> page = repository.getProductsPage(5.0, 12.0, null, new PageQuery("price", true, cursor, 3));
+            page.items().forEach(product -> prices.add(product.getPrice()));
+            cursor = page.nextCursor();
+        } while (cursor != null);
+        assertEquals(List.of(12.0, 11.0, 10.0, 9.0, 8.0, 7.0, 6.0, 5.0), prices);
+
+        List<String> names = repository.getProductsPage(null, null, "Apple", new PageQuery("name", false, null, 100))
+                .items().map(Product::getName).toList();
+        assertEquals(11, names.size());
+        assertTrue(names.stream().allMatch(name -> name.startsWith("Apple")));
+
+        // A cursor from outside the range resumes at the range's start rather than failing
+        String early = repository.getProductsPage(null, null, null, new PageQuery("price", false, null, 1)).nextCursor();
+        assertEquals(List.of(5.0, 6.0), repository.getProductsPage(5.0, 12.0, null, new PageQuery("price", false, early, 2))
+                .items().map(Product::getPrice).toList());
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.repository;
+
+import com.example.model.Cart;
+import com.example.model.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UnitOfWorkTest {
+
+    @TempDir
+    Path dataDir;
+
+    private Path journalPath;
+    private TransactionJournal journal;
+
+    @BeforeEach
+    void setUp() {
+        journalPath = dataDir.resolve("transactions.journal");
+        journal = newJournal();
+    }
+
+    private TransactionJournal newJournal() {
+        TransactionJournal journal = new TransactionJournal();
+        ReflectionTestUtils.setField(journal, "journalPath", journalPath.toString());
+        journal.repair();
+        return journal;
+    }
+
+    private ProductRepository newProductRepository(TransactionJournal journal) {
+        ProductRepository repository = new ProductRepository();
+        ReflectionTestUtils.setField(repository, "productDataPath", dataDir.resolve("products.json").toString());
+        repository.setJournal(journal);
+        repository.loadCache();
+        return repository;
+    }
+
+    private CartRepository newCartRepository(TransactionJournal journal) {
+        CartRepository repository = new CartRepository();
+        ReflectionTestUtils.setField(repository, "cartDataPath", dataDir.resolve("carts.json").toString());
+        repository.setJournal(journal);
+        repository.loadCache();
+        return repository;
+    }
+
+    // Test Case 1: Changes to two repositories are one journal record, and their files catch up at the checkpoint
+    @Test
+    void testRun_JournalsOnceAndDefersDataFiles() throws IOException {
+        ProductRepository productRepository = newProductRepository(journal);
+        CartRepository cartRepository = newCartRepository(journal);
+        Product product = new Product("Journaled Product", 10.0);
+        Cart cart = new Cart(UUID.randomUUID());
+
+        UnitOfWork.run(() -> {
+            productRepository.addProduct(product);
+            cartRepository.addCart(cart);
+        });
+
+        assertEquals(1, Files.readAllLines(journalPath).size());
+        assertFalse(Files.exists(dataDir.resolve("products.json")), "Data files should wait for the checkpoint");
+        assertNotNull(productRepository.getProductById(product.getId()));
+        assertNotNull(cartRepository.getCartById(cart.getId()));
+
+        journal.checkpoint();
+
+        assertFalse(Files.exists(journalPath), "Checkpoint should empty the journal");
+        TransactionJournal restarted = newJournal();
+        assertNotNull(newProductRepository(restarted).getProductById(product.getId()));
+        assertNotNull(newCartRepository(restarted).getCartById(cart.getId()));
+    }
+
+    // Test Case 2: A unit of work that never reached the data files is replayed from the journal on restart
+    @Test
+    void testLoadCache_ReplaysJournal() throws IOException {
+        ProductRepository productRepository = newProductRepository(journal);
+        CartRepository cartRepository = newCartRepository(journal);
+        Product product = productRepository.addProduct(new Product("Stored Product", 10.0));
+        Cart cart = new Cart(UUID.randomUUID());
+        cartRepository.addCart(cart);
+
+        UnitOfWork.run(() -> {
+            productRepository.updateProduct(product.getId(), "Renamed Product", 12.0);
+            cartRepository.addProductToCart(cart.getId(), product);
+        });
+        Files.writeString(journalPath, "{\"changes\":[{\"path\":", StandardOpenOption.APPEND);
+
+        TransactionJournal restarted = newJournal();
+        assertEquals("Renamed Product", newProductRepository(restarted).getProductById(product.getId()).getName());
+        assertEquals(1, newCartRepository(restarted).getCartById(cart.getId()).getItemCount());
+    }
+
+    // Test Case 3: Nothing is applied when the work throws or a staged entity was changed by someone else first
+    @Test
+    void testRun_AppliesNothingOnFailure() {
+        ProductRepository productRepository = newProductRepository(journal);
+        CartRepository cartRepository = newCartRepository(journal);
+        Product product = productRepository.addProduct(new Product("Contended Product", 10.0));
+        Cart cart = new Cart(UUID.randomUUID());
+
+        assertThrows(IllegalStateException.class, () -> UnitOfWork.run(() -> {
+            cartRepository.addCart(cart);
+            throw new IllegalStateException("Failed midway");
+        }));
+        assertThrows(OptimisticLockingFailureException.class, () -> UnitOfWork.run(() -> {
+            cartRepository.addCart(cart);
+            productRepository.updateProduct(product.getId(), "Mine", 11.0);
+            assertEquals("Mine", productRepository.getProductById(product.getId()).getName());
+            CompletableFuture.runAsync(() -> productRepository.updateProduct(product.getId(), "Theirs", 12.0)).join();
+        }));
+
+        assertNull(cartRepository.getCartById(cart.getId()));
+        assertEquals("Theirs", productRepository.getProductById(product.getId()).getName());
+        assertFalse(Files.exists(journalPath));
+    }
+}
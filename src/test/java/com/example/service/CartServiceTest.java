@@ -3,18 +3,23 @@ package com.example.service;
 import com.example.model.Cart;
 import com.example.model.Product;
 import com.example.repository.CartRepository;
+import com.example.repository.ProductRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 public class CartServiceTest {
@@ -22,6 +27,9 @@ public class CartServiceTest {
     @Mock
     private CartRepository cartRepository;
 
+    @Mock
+    private ProductRepository productRepository;
+
     @InjectMocks
     private CartService cartService;
 
@@ -402,4 +410,70 @@ public class CartServiceTest {
         // Verify interactions
         verify(cartRepository).deleteCartById(nonExistingId);
     }
-}
\ No newline at end of file
+
+    // Test Case 1: Test applying a batch of operations as one cart update
+    @Test
+    @SuppressWarnings("unchecked")
+    void testApplyOperations_AppliesAllInOneUpdate() {
+        // Arrange
+        Product otherProduct = new Product(UUID.randomUUID(), "Other Product", 5.0);
+        testCart.getProducts().add(otherProduct);
+        when(productRepository.getProductById(testProduct.getId())).thenReturn(testProduct);
+        when(cartRepository.applyToCart(eq(cartId), any(Consumer.class))).thenReturn(testCart);
+        List<CartOperation> operations = List.of(
+                new CartOperation("add", testProduct.getId()),
+                new CartOperation("add", testProduct.getId()),
+                new CartOperation("remove", otherProduct.getId()));
+
+        // Act
+        Cart result = cartService.applyOperations(cartId, operations, null);
+
+        // Assert
+        ArgumentCaptor<Consumer<Cart>> changes = ArgumentCaptor.forClass(Consumer.class);
+        verify(cartRepository, times(1)).applyToCart(eq(cartId), changes.capture());
+        changes.getValue().accept(testCart);
+        assertSame(testCart, result);
+        assertEquals(2, testCart.getProducts().size());
+        assertTrue(testCart.getProducts().stream().allMatch(p -> p.getId().equals(testProduct.getId())));
+    }
+
+    // Test Case 2: Test a batch with an unknown product leaves the cart untouched
+    @Test
+    @SuppressWarnings("unchecked")
+    void testApplyOperations_UnknownProductRejectsBatch() {
+        // Arrange
+        UUID missingProductId = UUID.randomUUID();
+        when(productRepository.getProductById(testProduct.getId())).thenReturn(testProduct);
+        when(productRepository.getProductById(missingProductId)).thenReturn(null);
+        List<CartOperation> operations = List.of(
+                new CartOperation("add", testProduct.getId()),
+                new CartOperation("add", missingProductId));
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> cartService.applyOperations(cartId, operations, null));
+        verify(cartRepository, never()).applyToCart(any(UUID.class), any(Consumer.class));
+        verify(cartRepository, never()).applyToCart(any(UUID.class), any(Consumer.class), anyLong());
+    }
+
+    // Test Case 3: Test an add that would overflow a line's quantity is rejected and leaves the cart untouched
+    @Test
+    @SuppressWarnings("unchecked")
+    void testApplyOperations_QuantityOverflowRejected() {
+        // Arrange
+        testCart.getProducts().add(testProduct);
+        testCart.getProducts().add(testProduct);
+        double totalBefore = testCart.getTotalPrice();
+        when(productRepository.getProductById(testProduct.getId())).thenReturn(testProduct);
+        when(cartRepository.applyToCart(eq(cartId), any(Consumer.class))).thenAnswer(invocation -> {
+            invocation.<Consumer<Cart>>getArgument(1).accept(testCart);
+            return testCart;
+        });
+        List<CartOperation> operations = List.of(
+                new CartOperation("add", testProduct.getId(), Integer.MAX_VALUE));
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> cartService.applyOperations(cartId, operations, null));
+        assertEquals(2, testCart.getProducts().size());
+        assertEquals(totalBefore, testCart.getTotalPrice());
+    }
+}
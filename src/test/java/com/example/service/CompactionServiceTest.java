@@ -0,0 +1,101 @@
+package com.example.service;
+
+import com.example.repository.OrderRepository;
+import com.example.repository.ProductRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class CompactionServiceTest {
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private OrderRepository orderRepository;
+
+    private CompactionService compactionService;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        compactionService = new CompactionService(List.of(productRepository, orderRepository));
+        meterRegistry = new SimpleMeterRegistry();
+        compactionService.setMeterRegistry(meterRegistry);
+        ReflectionTestUtils.setField(compactionService, "maxLogBytes", 1000L);
+        ReflectionTestUtils.setField(compactionService, "maxLogRecords", 10L);
+        ReflectionTestUtils.setField(compactionService, "maxLogAgeMs", 60_000L);
+
+        when(productRepository.isLogMode()).thenReturn(true);
+        when(orderRepository.isLogMode()).thenReturn(true);
+        when(productRepository.getLastSnapshotMillis()).thenReturn(System.currentTimeMillis());
+        when(orderRepository.getLastSnapshotMillis()).thenReturn(System.currentTimeMillis());
+    }
+
+    // Test Case 1: Only repositories past a threshold are compacted
+    @Test
+    void testCompactIfNeeded_OnlyCompactsOversizedLogs() {
+        when(productRepository.getLogSize()).thenReturn(5000L);
+        when(orderRepository.getLogSize()).thenReturn(100L);
+        when(orderRepository.getLogRecordCount()).thenReturn(2L);
+        when(productRepository.compact()).thenReturn(true);
+
+        compactionService.compactIfNeeded();
+
+        verify(productRepository).compact();
+        verify(orderRepository, never()).compact();
+        assertEquals(1, meterRegistry.get("repository.compaction")
+                .tag("repository", productRepository.getClass().getSimpleName()).timer().count());
+        assertEquals(1, meterRegistry.find("repository.compaction").timers().size());
+    }
+
+    // Test Case 2: The record count threshold triggers compaction
+    @Test
+    void testNeedsCompaction_RecordCountThreshold() {
+        when(productRepository.getLogSize()).thenReturn(100L);
+        when(productRepository.getLogRecordCount()).thenReturn(10L);
+
+        assertTrue(compactionService.needsCompaction(productRepository));
+    }
+
+    // Test Case 3: An old but non-empty log is compacted
+    @Test
+    void testNeedsCompaction_AgeThreshold() {
+        when(productRepository.getLogSize()).thenReturn(100L);
+        when(productRepository.getLastSnapshotMillis()).thenReturn(System.currentTimeMillis() - 120_000L);
+
+        assertTrue(compactionService.needsCompaction(productRepository));
+    }
+
+    // Test Case 4: An empty log is never compacted
+    @Test
+    void testNeedsCompaction_EmptyLog() {
+        when(productRepository.getLogSize()).thenReturn(0L);
+        when(productRepository.getLastSnapshotMillis()).thenReturn(0L);
+
+        assertFalse(compactionService.needsCompaction(productRepository));
+    }
+
+    // Test Case 5: Snapshot-mode repositories are skipped
+    @Test
+    void testCompactIfNeeded_SkipsSnapshotMode() {
+        when(productRepository.isLogMode()).thenReturn(false);
+        when(orderRepository.isLogMode()).thenReturn(false);
+
+        compactionService.compactIfNeeded();
+
+        verify(productRepository, never()).compact();
+        verify(orderRepository, never()).compact();
+        assertNull(meterRegistry.find("repository.compaction").timer());
+    }
+}
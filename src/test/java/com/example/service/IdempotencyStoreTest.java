@@ -0,0 +1,105 @@
+package com.example.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdempotencyStoreTest {
+
+    // Test Case 1: A repeated key replays the first result without running the action again
+    @Test
+    void testExecute_ReplaysRepeatedKey() {
+        IdempotencyStore store = new IdempotencyStore();
+        AtomicInteger runs = new AtomicInteger();
+
+        IdempotencyStore.Outcome<Integer> first = store.execute("key", runs::incrementAndGet);
+        IdempotencyStore.Outcome<Integer> retry = store.execute("key", runs::incrementAndGet);
+
+        assertEquals(1, runs.get());
+        assertFalse(first.replayed());
+        assertTrue(retry.replayed());
+        assertEquals(first.value(), retry.value());
+    }
+
+    // Test Case 2: A failed attempt is forgotten so the key can be retried
+    @Test
+    void testExecute_ForgetsFailedAttempt() {
+        IdempotencyStore store = new IdempotencyStore();
+
+        assertThrows(IllegalStateException.class, () -> store.execute("key", () -> {
+            throw new IllegalStateException("Failed");
+        }));
+
+        assertFalse(store.execute("key", () -> "done").replayed());
+    }
+
+    // Test Case 3: Keys are dropped once they expire or the store is full
+    @Test
+    void testExecute_EvictsExpiredAndOldestKeys() {
+        IdempotencyStore store = new IdempotencyStore();
+        ReflectionTestUtils.setField(store, "maxKeys", 2);
+        store.execute("a", () -> 1);
+        store.execute("b", () -> 2);
+        store.execute("c", () -> 3);
+
+        assertEquals(2, store.size());
+        assertFalse(store.execute("a", () -> 4).replayed(), "Oldest key should have been evicted");
+
+        ReflectionTestUtils.setField(store, "ttlMs", 0L);
+        store.execute("d", () -> 5);
+        assertEquals(1, store.size());
+    }
+
+    // Test Case 4: An attempt that fails with an Error is forgotten too, rather than left in flight
+    @Test
+    void testExecute_ForgetsAttemptFailingWithError() {
+        IdempotencyStore store = new IdempotencyStore();
+
+        assertThrows(AssertionError.class, () -> store.execute("key", () -> {
+            throw new AssertionError("Failed");
+        }));
+
+        assertEquals(0, store.size());
+        assertFalse(store.execute("key", () -> "done").replayed());
+    }
+
+    // Test Case 5: A full store doesn't drop a key whose first attempt is still running
+    @Test
+    void testExecute_KeepsKeysInFlight() throws Exception {
+        IdempotencyStore store = new IdempotencyStore();
+        ReflectionTestUtils.setField(store, "maxKeys", 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<IdempotencyStore.Outcome<Integer>> running = executor.submit(() -> store.execute("a", () -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return 1;
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            store.execute("b", () -> 2);
+            store.execute("c", () -> 3);
+            release.countDown();
+            running.get(5, TimeUnit.SECONDS);
+
+            assertEquals(2, store.size());
+            assertTrue(store.execute("a", () -> 4).replayed(), "Key in flight should not have been evicted");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -274,5 +274,20 @@ public class OrderServiceTest {
         verify(orderRepository, never()).deleteOrderById(any(UUID.class));
     }
 
-
-}
\ No newline at end of file
+    // Test Case 1: Test getting the orders of a user through the repository's user index
+    @Test
+    void testGetOrdersByUserId_ReturnsUserOrders() {
+        // Arrange
+        when(orderRepository.getOrdersByUserId(userId)).thenReturn(List.of(testOrder));
+        
+        // Act
+        List<Order> result = orderService.getOrdersByUserId(userId);
+        
+        // Assert
+        assertEquals(1, result.size());
+        assertEquals(orderId, result.get(0).getId());
+        
+        // Verify interactions
+        verify(orderRepository).getOrdersByUserId(userId);
+    }
+}
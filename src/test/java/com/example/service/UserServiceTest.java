@@ -10,17 +10,23 @@ import com.example.repository.ProductRepository;
 import com.example.repository.UserRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 public class UserServiceTest {
@@ -367,6 +373,7 @@ public class UserServiceTest {
 
     // Test Case 10: Test emptying a cart
     @Test
+    @SuppressWarnings("unchecked")
     void testEmptyCart_WithExistingCart() {
         // Arrange
         Cart cart = new Cart(userId);
@@ -381,11 +388,14 @@ public class UserServiceTest {
         userService.emptyCart(userId);
         
         // Assert
+        ArgumentCaptor<Consumer<Cart>> changes = ArgumentCaptor.forClass(Consumer.class);
+        verify(cartRepository).applyToCart(eq(cart.getId()), changes.capture());
+        changes.getValue().accept(cart);
         assertTrue(cart.getProducts().isEmpty());
         
         // Verify interactions
         verify(cartService, atLeastOnce()).getCartByUserId(userId);
-        verify(cartRepository).addCart(cart);
+        verify(cartRepository, never()).addCart(any(Cart.class));
     }
 
     // Test Case 11: Test emptying a null cart
@@ -401,6 +411,7 @@ public class UserServiceTest {
         // Verify interactions
         verify(cartService, atLeastOnce()).getCartByUserId(userId);
         verify(cartRepository, never()).addCart(any(Cart.class));
+        verify(cartRepository, never()).applyToCart(any(UUID.class), any(Consumer.class));
     }
     
     // Test Case 11.1: Test emptying a cart with null userId
@@ -417,6 +428,7 @@ public class UserServiceTest {
         // Verify interactions
         verify(cartService).getCartByUserId(nullUserId);
         verify(cartRepository, never()).addCart(any(Cart.class));
+        verify(cartRepository, never()).applyToCart(any(UUID.class), any(Consumer.class));
     }
 
     // Test Case 12: Test removing an order from a user
@@ -520,4 +532,28 @@ public class UserServiceTest {
         verify(cartService, never()).deleteCartById(any(UUID.class));
         verify(userRepository, never()).deleteUserById(any(UUID.class));
     }
-}
\ No newline at end of file
+
+    // Test Case 16: Test importing users rejects invalid ones and gives only new users a cart
+    @Test
+    void testImportUsers_RejectsInvalidAndCreatesCartsForNewUsers() {
+        // Arrange
+        User newUser = new User(UUID.randomUUID(), "New User", new ArrayList<>());
+        User unnamedUser = new User(UUID.randomUUID(), " ", new ArrayList<>());
+        when(userRepository.getUserById(userId)).thenReturn(testUser);
+        when(userRepository.getUserById(newUser.getId())).thenReturn(null);
+        Map<Integer, User> users = new LinkedHashMap<>();
+        users.put(0, testUser);
+        users.put(1, unnamedUser);
+        users.put(2, newUser);
+
+        // Act
+        ImportReport report = userService.importUsers(users, new ImportReport());
+
+        // Assert
+        assertEquals(2, report.getImported());
+        assertEquals(1, report.getRejected());
+        assertEquals(1, report.getErrors().get(0).index());
+        verify(userRepository).addUsers(List.of(testUser, newUser));
+        verify(cartService).addCarts(argThat(carts -> carts.size() == 1 && carts.get(0).getUserId().equals(newUser.getId())));
+    }
+}